@@ -0,0 +1,80 @@
+package com.codedotorg.modelmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks batched inference on synthetic frames. The score is per batch,
+ * so frames per second is the throughput multiplied by batchSize.
+ * Needs the model at model.path but no camera.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BatchInferenceBenchmark {
+
+    /** The number of frames run through the model at once */
+    @Param({"1", "4", "16", "64"})
+    public int batchSize;
+
+    /** The synthetic camera frames filled with random pixels */
+    private List<Mat> frames;
+
+    /** The model under test */
+    private ModelManager model;
+
+    /**
+     * Loads the model and creates the synthetic frames.
+     */
+    @Setup
+    public void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+
+        frames = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            Mat frame = new Mat(480, 640, CvType.CV_8UC3);
+            Core.randu(frame, 0, 256);
+            frames.add(frame);
+        }
+
+        model = BenchmarkModels.load();
+    }
+
+    /**
+     * Releases the native memory of the frames.
+     */
+    @TearDown
+    public void tearDown() {
+        frames.forEach(Mat::release);
+    }
+
+    /**
+     * Prepares the batch and runs it through the model.
+     *
+     * @return the predicted class probabilities of each frame
+     */
+    @Benchmark
+    public float[][] predictBatch() {
+        return model.getModelPredictor().predictBatch(frames);
+    }
+}
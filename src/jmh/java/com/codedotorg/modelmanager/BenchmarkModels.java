@@ -0,0 +1,29 @@
+package com.codedotorg.modelmanager;
+
+/**
+ * Loads the model for the benchmarks that need one.
+ */
+final class BenchmarkModels {
+
+    /**
+     * BenchmarkModels only has static methods.
+     */
+    private BenchmarkModels() {
+    }
+
+    /**
+     * Loads the model at model.path without the warm-up, since JMH runs its own.
+     *
+     * @return the loaded model
+     * @throws IllegalStateException if the model cannot be loaded
+     */
+    static ModelManager load() {
+        System.setProperty("rps.warmup.runs", "0");
+
+        ModelManager model = new ModelManager();
+        if (model.getModelProcessor().getSignature() == null) {
+            throw new IllegalStateException("The model could not be loaded, set -Drps.model.path to a SavedModel");
+        }
+        return model;
+    }
+}
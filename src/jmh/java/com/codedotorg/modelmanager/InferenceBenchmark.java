@@ -0,0 +1,109 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+/**
+ * Benchmarks the model on a synthetic frame, alone and end to end from a
+ * camera frame to a Prediction. Needs the model at model.path but no camera.
+ * Pass -p intraOpThreads=1,2,4 -p interOpThreads=1,2 to compare session threading.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InferenceBenchmark {
+
+    /** The TensorFlow intra-op thread count, 0 lets TensorFlow decide */
+    @Param({"0"})
+    public String intraOpThreads;
+
+    /** The TensorFlow inter-op thread count, 0 lets TensorFlow decide */
+    @Param({"0"})
+    public String interOpThreads;
+
+    /** The synthetic camera frame filled with random pixels */
+    private Mat frame;
+
+    /** The model under test */
+    private ModelManager model;
+
+    /** An input tensor prepared once, to time Session.run alone */
+    private Tensor<Float> tensorInput;
+
+    /**
+     * Loads the model with the session threading under test and prepares the inputs.
+     */
+    @Setup
+    public void setUp() {
+        System.setProperty("rps.tf.intraOpThreads", intraOpThreads);
+        System.setProperty("rps.tf.interOpThreads", interOpThreads);
+
+        nu.pattern.OpenCV.loadLocally();
+
+        frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+
+        model = BenchmarkModels.load();
+
+        ModelProcessor modelProcessor = model.getModelProcessor();
+        tensorInput = modelProcessor.floatBufferToTensor(modelProcessor.prepareFrameForModel(frame));
+    }
+
+    /**
+     * Releases the native memory of the frame and the input tensor.
+     */
+    @TearDown
+    public void tearDown() {
+        tensorInput.close();
+        frame.release();
+    }
+
+    /**
+     * Runs the model on an already prepared input tensor.
+     *
+     * @return the predicted class probabilities
+     */
+    @Benchmark
+    public float[] predict() {
+        return model.getModelPredictor().predict(tensorInput);
+    }
+
+    /**
+     * Prepares a camera frame and runs the model on it.
+     *
+     * @return the predicted class probabilities
+     */
+    @Benchmark
+    public float[] processAndPredict() {
+        return model.getModelPredictor().processAndPredict(frame);
+    }
+
+    /**
+     * Goes from a camera frame to a Prediction through ModelManager.
+     *
+     * @return the prediction for the frame
+     */
+    @Benchmark
+    public Prediction getPrediction() {
+        return model.getPrediction(frame);
+    }
+}
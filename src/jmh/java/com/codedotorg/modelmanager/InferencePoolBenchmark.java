@@ -0,0 +1,97 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the frame rate of the InferencePool scales with the number
+ * of workers while several streams are fed at once. Each operation sends one
+ * frame on every stream and waits for all their predictions, so the score
+ * times streams is the number of frames predicted per second.
+ * Pass -p intraOpThreads=1 to keep TensorFlow from using every core in each run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InferencePoolBenchmark {
+
+    /** The number of worker threads */
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    /** The number of streams fed at once */
+    @Param({"8"})
+    public int streams;
+
+    /** The TensorFlow intra-op thread count, 0 lets TensorFlow decide */
+    @Param({"0"})
+    public String intraOpThreads;
+
+    /** The synthetic camera frame filled with random pixels */
+    private Mat frame;
+
+    /** The pool under test */
+    private InferencePool pool;
+
+    /** Released once for each prediction made by the pool */
+    private final Semaphore predictions = new Semaphore(0);
+
+    /**
+     * Loads the model and starts the pool with one stream per camera.
+     */
+    @Setup
+    public void setUp() {
+        System.setProperty("rps.tf.intraOpThreads", intraOpThreads);
+
+        nu.pattern.OpenCV.loadLocally();
+
+        frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+
+        pool = new InferencePool(BenchmarkModels.load(), workers);
+        for (int i = 0; i < streams; i++) {
+            pool.addStream(prediction -> predictions.release());
+        }
+    }
+
+    /**
+     * Stops the pool and releases the native memory of the frame.
+     */
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        frame.release();
+    }
+
+    /**
+     * Sends one frame on every stream and waits for all their predictions.
+     *
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    @Benchmark
+    public void predictAllStreams() throws InterruptedException {
+        for (int i = 0; i < streams; i++) {
+            pool.submit(i, frame);
+        }
+        predictions.acquire(streams);
+    }
+}
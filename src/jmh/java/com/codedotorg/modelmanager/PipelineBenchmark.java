@@ -0,0 +1,128 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the sequential prepare-then-predict path with the
+ * PipelinedPredictor, which prepares the next frame while the model runs on
+ * the current one: the sustained frame rate of each, and the latency of a
+ * single frame from when it is handed over until its prediction is made.
+ * Needs the model at model.path but no camera.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PipelineBenchmark {
+
+    /** The number of frames run through the model per benchmark call */
+    private static final int FRAMES = 32;
+
+    /** The synthetic camera frame filled with random pixels */
+    private Mat frame;
+
+    /** The model under test */
+    private ModelManager model;
+
+    /** The pipeline under test */
+    private PipelinedPredictor pipeline;
+
+    /** Released once for each prediction made by the pipeline */
+    private final Semaphore predictions = new Semaphore(0);
+
+    /**
+     * Loads the model and starts the pipeline.
+     */
+    @Setup
+    public void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+
+        frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+
+        model = BenchmarkModels.load();
+        pipeline = new PipelinedPredictor(model, 2, prediction -> predictions.release());
+    }
+
+    /**
+     * Stops the pipeline and releases the native memory of the frame.
+     */
+    @TearDown
+    public void tearDown() {
+        pipeline.close();
+        frame.release();
+    }
+
+    /**
+     * Prepares and predicts the frames one after the other on one thread.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void sequential() {
+        for (int i = 0; i < FRAMES; i++) {
+            model.getModelPredictor().processAndPredict(frame, i);
+        }
+    }
+
+    /**
+     * Submits the frames to the pipeline and waits for all their predictions.
+     *
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void pipelined() throws InterruptedException {
+        for (int i = 0; i < FRAMES; i++) {
+            pipeline.submit(frame, i);
+        }
+        predictions.acquire(FRAMES);
+    }
+
+    /**
+     * Prepares and predicts one frame on the calling thread, sampling how
+     * long each frame takes from capture to prediction.
+     *
+     * @return the predicted class probabilities
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public float[] sequentialLatency() {
+        return model.getModelPredictor().processAndPredict(frame, 0);
+    }
+
+    /**
+     * Submits one frame to the pipeline and waits until the listener gets
+     * its prediction, sampling the time from submit to listener. This
+     * includes the handoff to the inference thread, which the frame rate
+     * of pipelined() hides.
+     *
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void pipelinedLatency() throws InterruptedException {
+        pipeline.submit(frame, 0);
+        predictions.acquire();
+    }
+}
@@ -0,0 +1,233 @@
+package com.codedotorg.modelmanager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import javafx.scene.image.Image;
+
+/**
+ * Benchmarks each stage between a captured frame and the model input on
+ * a synthetic frame, so it runs without a camera or a model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PreprocessingBenchmark {
+
+    /** The width of the synthetic camera frame */
+    @Param({"640"})
+    public int width;
+
+    /** The height of the synthetic camera frame */
+    @Param({"480"})
+    public int height;
+
+    /** The synthetic camera frame filled with random pixels */
+    private Mat frame;
+
+    /** The frame resized to the model input, for the stages after resizing */
+    private Mat resized;
+
+    /** The pixels of the resized frame, for the normalization stage */
+    private byte[] pixels;
+
+    /** The normalized pixels, for the tensor stage */
+    private float[] floats;
+
+    /** The direct buffer the normalizers write into, like the input buffer of FramePreprocessor */
+    private ByteBuffer normalized;
+
+    /** Normalizes the pixels one at a time */
+    private PixelNormalizer scalarNormalizer;
+
+    /** Normalizes the pixels with the Vector API */
+    private PixelNormalizer vectorNormalizer;
+
+    /** Converts frames for the camera preview */
+    private CameraController cameraController;
+
+    /** Wraps a direct buffer like the one behind the preview PixelBuffer */
+    private Mat previewMat;
+
+    /** Provides the individual preprocessing stages */
+    private ModelProcessor modelProcessor;
+
+    /** Runs the whole preprocessing into reusable buffers */
+    private FramePreprocessor preprocessor;
+
+    /**
+     * Creates the synthetic frame and the intermediate inputs of each stage.
+     */
+    @Setup
+    public void setUp() {
+        nu.pattern.OpenCV.loadLocally();
+
+        frame = new Mat(height, width, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+
+        cameraController = new CameraController();
+        previewMat = new Mat(height, width, CvType.CV_8UC4, ByteBuffer.allocateDirect(width * height * 4));
+        modelProcessor = new ModelProcessor();
+        preprocessor = new FramePreprocessor(new long[] {-1, 224, 224, 3});
+
+        resized = modelProcessor.resizeFrame(frame);
+        pixels = modelProcessor.matToByteArray(resized);
+        floats = modelProcessor.byteArrayToFloatArray(pixels);
+
+        normalized = ByteBuffer.allocateDirect(pixels.length * Float.BYTES).order(ByteOrder.nativeOrder());
+        scalarNormalizer = new ScalarPixelNormalizer();
+        vectorNormalizer = new VectorPixelNormalizer();
+    }
+
+    /**
+     * Releases the native memory of the frames.
+     */
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        resized.release();
+        previewMat.release();
+        preprocessor.release();
+    }
+
+    /**
+     * Converts the frame for the camera preview.
+     *
+     * @return the converted preview frame
+     */
+    @Benchmark
+    public Mat convertPreview() {
+        return cameraController.convertPreview(frame);
+    }
+
+    /**
+     * Shows a frame in the camera preview the way it was done before
+     * PixelBuffer: encode it as PNG and decode it into a new Image.
+     * Run with -prof gc to compare its allocation rate with pixelBufferPreview.
+     *
+     * @return the decoded preview image
+     */
+    @Benchmark
+    public Image pngPreview() {
+        MatOfByte buffer = new MatOfByte();
+        Imgcodecs.imencode(".png", frame, buffer);
+        Image image = new Image(new ByteArrayInputStream(buffer.toArray()));
+        buffer.release();
+        return image;
+    }
+
+    /**
+     * Shows a frame in the camera preview through the reusable PixelBuffer:
+     * the conversion on the capture thread, then the copy into the direct
+     * buffer that the JavaFX thread makes inside updateBuffer().
+     *
+     * @return the buffer behind the preview image
+     */
+    @Benchmark
+    public Mat pixelBufferPreview() {
+        cameraController.convertPreview(frame).copyTo(previewMat);
+        return previewMat;
+    }
+
+    /**
+     * Resizes the frame to the model input size.
+     *
+     * @return the number of pixels in the resized frame
+     */
+    @Benchmark
+    public long resizeFrame() {
+        Mat result = modelProcessor.resizeFrame(frame);
+        long total = result.total();
+        result.release();
+        return total;
+    }
+
+    /**
+     * Copies the resized frame into a byte array.
+     *
+     * @return the pixels of the resized frame
+     */
+    @Benchmark
+    public byte[] matToByteArray() {
+        return modelProcessor.matToByteArray(resized);
+    }
+
+    /**
+     * Normalizes the pixels with the scalar loop.
+     *
+     * @return the normalized pixels
+     */
+    @Benchmark
+    public float[] byteArrayToFloatArray() {
+        return modelProcessor.byteArrayToFloatArray(pixels);
+    }
+
+    /**
+     * Normalizes the pixels into a direct buffer with the scalar loop.
+     *
+     * @return the buffer holding the normalized pixels
+     */
+    @Benchmark
+    public ByteBuffer scalarNormalize() {
+        scalarNormalizer.normalize(pixels, pixels.length, normalized);
+        return normalized;
+    }
+
+    /**
+     * Normalizes the pixels into a direct buffer with the Vector API.
+     *
+     * @return the buffer holding the normalized pixels
+     */
+    @Benchmark
+    public ByteBuffer vectorNormalize() {
+        vectorNormalizer.normalize(pixels, pixels.length, normalized);
+        return normalized;
+    }
+
+    /**
+     * Copies the normalized pixels into an input tensor.
+     *
+     * @return the number of elements in the tensor
+     */
+    @Benchmark
+    public int floatArrayToTensor() {
+        try (Tensor<Float> tensor = modelProcessor.floatArrayToTensor(floats)) {
+            return tensor.numElements();
+        }
+    }
+
+    /**
+     * Runs the whole preprocessing of a camera frame into the reusable input buffer.
+     *
+     * @return the prepared input buffer
+     */
+    @Benchmark
+    public FloatBuffer prepareFrame() {
+        return preprocessor.prepare(frame);
+    }
+}
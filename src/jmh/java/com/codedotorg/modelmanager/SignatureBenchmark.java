@@ -0,0 +1,97 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+
+/**
+ * Compares looking up the model input and output through the signature
+ * resolved at load time with searching the graph by name, as was done for
+ * every frame before. Runs on a synthetic graph, so it needs no model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SignatureBenchmark {
+
+    /** The number of operations in the synthetic graph, a MobileNet has several hundred */
+    @Param({"100", "1000"})
+    public int operations;
+
+    /** A graph with an input placeholder followed by a chain of operations */
+    private Graph graph;
+
+    /** The signature resolved once from the graph */
+    private ModelSignature signature;
+
+    /**
+     * Builds the synthetic graph and resolves its signature.
+     */
+    @Setup
+    public void setUp() {
+        graph = new Graph();
+
+        Output<Float> input = graph.opBuilder("Placeholder", "input_1")
+                .setAttr("dtype", DataType.FLOAT)
+                .build()
+                .output(0);
+
+        Output<Float> previous = input;
+        for (int i = 1; i < operations; i++) {
+            previous = graph.opBuilder("Identity", "layer_" + i)
+                    .addInput(previous)
+                    .build()
+                    .output(0);
+        }
+
+        signature = new ModelSignature(input, ModelSignature.resolve(graph, "layer_1"));
+    }
+
+    /**
+     * Closes the synthetic graph.
+     */
+    @TearDown
+    public void tearDown() {
+        graph.close();
+    }
+
+    /**
+     * Looks up the input and output through the signature resolved at load time.
+     *
+     * @param blackhole consumes the input and output
+     */
+    @Benchmark
+    public void signatureLookup(Blackhole blackhole) {
+        blackhole.consume(signature.getInput());
+        blackhole.consume(signature.getOutput());
+    }
+
+    /**
+     * Finds the input and output by scanning the graph for their names.
+     *
+     * @param blackhole consumes the input and output
+     */
+    @Benchmark
+    public void graphScan(Blackhole blackhole) {
+        blackhole.consume(ModelSignature.resolve(graph, ModelProcessor.findInputNodeName(graph)));
+        blackhole.consume(ModelSignature.resolve(graph, ModelProcessor.findOutputNodeName(graph)));
+    }
+}
@@ -0,0 +1,388 @@
+package com.codedotorg;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import com.codedotorg.modelmanager.ModelManager;
+import com.codedotorg.modelmanager.Prediction;
+
+public class EvaluateModel {
+
+    /** The number of images run through the model at once when --batch is not given */
+    private static final int DEFAULT_BATCH_SIZE = 16;
+
+    /** The file extensions of the images to evaluate */
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList(".jpg", ".jpeg", ".png", ".bmp");
+
+    /** The model to evaluate */
+    private final ModelManager model;
+
+    /** The class labels of the model */
+    private final List<String> labels;
+
+    /** Decodes the images in parallel */
+    private final ForkJoinPool decodePool;
+
+    /** The number of images run through the model at once */
+    private final int batchSize;
+
+    /** The confusion matrix, indexed by [actual class][predicted class] */
+    private final long[][] confusion;
+
+    /** The time each batch took, in nanoseconds */
+    private final List<Long> batchTimes;
+
+    /**
+     * Evaluates the model on a directory of labeled images without a camera or window.
+     * The directory must contain one folder per class, named after the class label
+     * with or without its leading number (for example "rock" or "0 rock").
+     * Prints the results as JSON.
+     *
+     * Usage: EvaluateModel <image directory> [--batch size] [--output file]
+     *
+     * @param args the command line arguments
+     * @throws IOException if the images cannot be read or the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: EvaluateModel <image directory> [--batch size] [--output file]");
+            System.exit(1);
+        }
+
+        Path imageDirectory = Paths.get(args[0]);
+        int batchSize = DEFAULT_BATCH_SIZE;
+        Path output = null;
+
+        for (int i = 1; i < args.length - 1; i += 2) {
+            if (args[i].equals("--batch")) {
+                batchSize = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("--output")) {
+                output = Paths.get(args[i + 1]);
+            }
+        }
+
+        // Load the OpenCV library locally
+        nu.pattern.OpenCV.loadLocally();
+
+        EvaluateModel evaluation = new EvaluateModel(new ModelManager(), batchSize);
+        String json = evaluation.evaluate(imageDirectory);
+
+        if (output != null) {
+            Files.writeString(output, json);
+            System.out.println("Results written to " + output.toAbsolutePath());
+        }
+        else {
+            System.out.println(json);
+        }
+    }
+
+    /**
+     * Constructs an EvaluateModel for the given model.
+     *
+     * @param model the model to evaluate
+     * @param batchSize the number of images run through the model at once
+     */
+    public EvaluateModel(ModelManager model, int batchSize) {
+        this.model = model;
+        this.labels = model.getModelProcessor().getLabels();
+        this.decodePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.batchSize = batchSize;
+        this.confusion = new long[labels.size()][labels.size()];
+        this.batchTimes = new ArrayList<>();
+    }
+
+    /**
+     * Runs every labeled image in the directory through the model in batches.
+     * The next batch is decoded in parallel while the current one is predicted.
+     *
+     * @param imageDirectory the directory containing one folder per class
+     * @return the results as JSON
+     * @throws IOException if the directory cannot be read
+     */
+    public String evaluate(Path imageDirectory) throws IOException {
+        List<LabeledImage> images = findImages(imageDirectory);
+        System.err.println("Evaluating " + images.size() + " images");
+
+        long start = System.nanoTime();
+        CompletableFuture<List<DecodedImage>> nextBatch = decodeBatch(images, 0);
+
+        for (int offset = 0; offset < images.size(); offset += batchSize) {
+            List<DecodedImage> batch = nextBatch.join();
+
+            // Start decoding the following batch before running the model on this one
+            if (offset + batchSize < images.size()) {
+                nextBatch = decodeBatch(images, offset + batchSize);
+            }
+
+            predictBatch(batch);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        decodePool.shutdown();
+
+        return toJson(images.size(), elapsed);
+    }
+
+    /**
+     * Finds the images in each class folder of the directory.
+     * Folders that do not match a label are skipped with a warning.
+     *
+     * @param imageDirectory the directory containing one folder per class
+     * @return the images and the index of their class
+     * @throws IOException if the directory cannot be read
+     */
+    private List<LabeledImage> findImages(Path imageDirectory) throws IOException {
+        List<LabeledImage> images = new ArrayList<>();
+
+        try (Stream<Path> folders = Files.list(imageDirectory)) {
+            for (Path folder : folders.filter(Files::isDirectory).sorted().collect(Collectors.toList())) {
+                int classIndex = findClassIndex(folder.getFileName().toString());
+
+                if (classIndex < 0) {
+                    System.err.println("Skipping " + folder + ", it does not match any label");
+                    continue;
+                }
+
+                try (Stream<Path> files = Files.walk(folder)) {
+                    files.filter(EvaluateModel::isImage)
+                            .sorted()
+                            .forEach(file -> images.add(new LabeledImage(file, classIndex)));
+                }
+            }
+        }
+
+        return images;
+    }
+
+    /**
+     * Returns the index of the label matching a folder name, either the whole
+     * label ("0 rock") or the label without its leading number ("rock").
+     *
+     * @param folderName the name of the class folder
+     * @return the index of the label, or -1 if no label matches
+     */
+    private int findClassIndex(String folderName) {
+        for (int i = 0; i < labels.size(); i++) {
+            String label = labels.get(i);
+            String name = label.substring(label.indexOf(" ") + 1);
+
+            if (label.equalsIgnoreCase(folderName) || name.equalsIgnoreCase(folderName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the file has one of the supported image extensions.
+     *
+     * @param file the file to check
+     * @return true if the file is an image, false otherwise
+     */
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * Decodes the images of one batch in parallel on the fork-join pool.
+     * Images that cannot be decoded are skipped with a warning.
+     *
+     * @param images all the images to evaluate
+     * @param offset the index of the first image of the batch
+     * @return the decoded images of the batch, in order
+     */
+    private CompletableFuture<List<DecodedImage>> decodeBatch(List<LabeledImage> images, int offset) {
+        List<LabeledImage> batch = images.subList(offset, Math.min(offset + batchSize, images.size()));
+
+        return CompletableFuture.supplyAsync(() -> batch.parallelStream()
+                .map(image -> new DecodedImage(image, Imgcodecs.imread(image.path.toString())))
+                .filter(decoded -> {
+                    if (decoded.frame.empty()) {
+                        System.err.println("Skipping " + decoded.image.path + ", it cannot be decoded");
+                        return false;
+                    }
+                    return true;
+                })
+                .collect(Collectors.toList()), decodePool);
+    }
+
+    /**
+     * Runs one batch of decoded images through the model and records
+     * how long it took and which class was predicted for each image.
+     *
+     * @param batch the decoded images of the batch
+     */
+    private void predictBatch(List<DecodedImage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Mat> frames = batch.stream().map(decoded -> decoded.frame).collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        List<Prediction> predictions = model.getPredictions(frames);
+        batchTimes.add(System.nanoTime() - start);
+
+        for (int i = 0; i < batch.size(); i++) {
+            int predicted = predictions.get(i).getClassIndex();
+            confusion[batch.get(i).image.classIndex][predicted]++;
+            frames.get(i).release();
+        }
+    }
+
+    /**
+     * Builds the JSON report with the throughput, latency percentiles,
+     * per-class accuracy and the confusion matrix.
+     *
+     * @param imageCount the number of images found
+     * @param elapsed the total time of the evaluation in nanoseconds
+     * @return the results as JSON
+     */
+    private String toJson(int imageCount, long elapsed) {
+        long evaluated = 0;
+        long correct = 0;
+        for (int i = 0; i < confusion.length; i++) {
+            evaluated += Arrays.stream(confusion[i]).sum();
+            correct += confusion[i][i];
+        }
+
+        // Every image of a batch gets its prediction when the whole batch is done,
+        // so the batch time is the latency of its images. Throughput is imagesPerSecond.
+        double[] latencies = new double[batchTimes.size()];
+        for (int i = 0; i < batchTimes.size(); i++) {
+            latencies[i] = batchTimes.get(i) / 1e6;
+        }
+        Arrays.sort(latencies);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"images\": ").append(imageCount).append(",\n");
+        json.append("  \"evaluated\": ").append(evaluated).append(",\n");
+        json.append("  \"batchSize\": ").append(batchSize).append(",\n");
+        json.append("  \"seconds\": ").append(format(elapsed / 1e9)).append(",\n");
+        json.append("  \"imagesPerSecond\": ").append(format(evaluated / (elapsed / 1e9))).append(",\n");
+        json.append("  \"latencyMs\": {\"p50\": ").append(format(percentile(latencies, 50)))
+                .append(", \"p99\": ").append(format(percentile(latencies, 99))).append("},\n");
+        json.append("  \"accuracy\": ").append(format(evaluated == 0 ? 0 : (double) correct / evaluated)).append(",\n");
+
+        json.append("  \"classes\": {\n");
+        for (int i = 0; i < labels.size(); i++) {
+            long total = Arrays.stream(confusion[i]).sum();
+            json.append("    ").append(quote(labels.get(i))).append(": {\"images\": ").append(total)
+                    .append(", \"correct\": ").append(confusion[i][i])
+                    .append(", \"accuracy\": ").append(format(total == 0 ? 0 : (double) confusion[i][i] / total))
+                    .append(i < labels.size() - 1 ? "},\n" : "}\n");
+        }
+        json.append("  },\n");
+
+        json.append("  \"confusionMatrix\": {\n");
+        json.append("    \"labels\": [")
+                .append(labels.stream().map(EvaluateModel::quote).collect(Collectors.joining(", ")))
+                .append("],\n");
+        json.append("    \"matrix\": [\n");
+        for (int i = 0; i < confusion.length; i++) {
+            json.append("      ").append(Arrays.toString(confusion[i])).append(i < confusion.length - 1 ? ",\n" : "\n");
+        }
+        json.append("    ]\n");
+        json.append("  }\n");
+        json.append("}");
+
+        return json.toString();
+    }
+
+    /**
+     * Returns the given percentile of a sorted array using the nearest-rank method.
+     *
+     * @param sorted the sorted values
+     * @param percentile the percentile to return, from 0 to 100
+     * @return the value at the percentile, or 0 if there are no values
+     */
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Formats a number for the JSON report with up to four decimals.
+     *
+     * @param value the number to format
+     * @return the formatted number
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    /**
+     * Quotes a string for the JSON report.
+     *
+     * @param value the string to quote
+     * @return the quoted string
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * An image file and the index of the class it belongs to.
+     */
+    private static class LabeledImage {
+
+        /** The path of the image file */
+        private final Path path;
+
+        /** The index of the class the image belongs to */
+        private final int classIndex;
+
+        /**
+         * Constructs a LabeledImage.
+         *
+         * @param path the path of the image file
+         * @param classIndex the index of the class the image belongs to
+         */
+        private LabeledImage(Path path, int classIndex) {
+            this.path = path;
+            this.classIndex = classIndex;
+        }
+    }
+
+    /**
+     * A labeled image and its decoded pixels.
+     */
+    private static class DecodedImage {
+
+        /** The labeled image that was decoded */
+        private final LabeledImage image;
+
+        /** The decoded BGR pixels */
+        private final Mat frame;
+
+        /**
+         * Constructs a DecodedImage.
+         *
+         * @param image the labeled image that was decoded
+         * @param frame the decoded BGR pixels
+         */
+        private DecodedImage(LabeledImage image, Mat frame) {
+            this.image = image;
+            this.frame = frame;
+        }
+    }
+}
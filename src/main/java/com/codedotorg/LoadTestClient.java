@@ -0,0 +1,239 @@
+package com.codedotorg;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import com.codedotorg.source.SyntheticSource;
+
+public class LoadTestClient {
+
+    /** The latency of each answered request in nanoseconds */
+    private static final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+    /** The number of requests shed with a 503 */
+    private static final AtomicLong shed = new AtomicLong();
+
+    /** The number of requests that timed out with a 504 */
+    private static final AtomicLong timedOut = new AtomicLong();
+
+    /** The number of requests that failed in any other way */
+    private static final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Sends frames to a running PredictionServer for a while and prints the
+     * request rate, the latency of the answered requests and how many
+     * requests were shed or timed out.
+     *
+     * By default several concurrent clients each send their next request
+     * once the previous one is answered. With --rate, requests are sent on a
+     * fixed schedule whether or not earlier ones were answered, the way
+     * independent users arrive, so an overloaded server has to shed them.
+     *
+     * Usage: LoadTestClient [url] [--clients count | --rate requestsPerSecond] [--seconds duration]
+     *
+     * @param args the command line arguments
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080/predict";
+        int clients = 8;
+        int rate = 0;
+        int seconds = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--clients") && i + 1 < args.length) {
+                clients = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--rate") && i + 1 < args.length) {
+                rate = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--seconds") && i + 1 < args.length) {
+                seconds = Integer.parseInt(args[++i]);
+            }
+            else {
+                url = args[i];
+            }
+        }
+
+        // Load the OpenCV library locally
+        nu.pattern.OpenCV.loadLocally();
+
+        byte[] image = syntheticJpeg();
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "image/jpeg")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                .build();
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        String mode;
+        if (rate > 0) {
+            sendAtRate(client, request, rate, end);
+            mode = rate + " requests/s";
+        }
+        else {
+            sendFromClients(client, request, clients, end);
+            mode = clients + " clients";
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        long total = sorted.size() + shed.get() + timedOut.get() + failed.get();
+
+        System.out.println(String.format(Locale.ROOT,
+                "%s, %d s: %.1f requests/s, %.1f answered/s, p50 %.2f ms, p99 %.2f ms, %d shed (503), %d timed out (504), %d failed",
+                mode, seconds, total / (double) seconds, sorted.size() / (double) seconds,
+                percentile(sorted, 50), percentile(sorted, 99), shed.get(), timedOut.get(), failed.get()));
+    }
+
+    /**
+     * Sends requests from concurrent clients until the end time. Each client
+     * sends its next request as soon as the previous one is answered, so the
+     * number of requests in flight never exceeds the number of clients.
+     *
+     * @param client the HTTP client to send with
+     * @param request the request to send
+     * @param clients the number of concurrent clients
+     * @param end the time to stop at, in System.nanoTime() units
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    private static void sendFromClients(HttpClient client, HttpRequest request, int clients, long end)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        record(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode(), start);
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "load-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Sends requests at a fixed rate until the end time without waiting for
+     * the answers, then waits for the requests still in flight. Latency is
+     * measured from the time each request was due, so a client that falls
+     * behind its schedule does not hide how slow the server was.
+     *
+     * @param client the HTTP client to send with
+     * @param request the request to send
+     * @param rate the number of requests to send per second
+     * @param end the time to stop at, in System.nanoTime() units
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    private static void sendAtRate(HttpClient client, HttpRequest request, int rate, long end)
+            throws InterruptedException {
+        long interval = 1_000_000_000L / rate;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+
+        for (long due = System.nanoTime(); due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            long start = due;
+            pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        }
+                        else {
+                            record(response.statusCode(), start);
+                        }
+                    }));
+        }
+
+        // Give the last requests time to be answered, failed requests are already counted
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Failures were recorded by each request
+        }
+    }
+
+    /**
+     * Counts a response by its status code.
+     *
+     * @param status the HTTP status code of the response
+     * @param start the time the request was sent or due, in System.nanoTime() units
+     */
+    private static void record(int status, long start) {
+        if (status == 200) {
+            latencies.add(System.nanoTime() - start);
+        }
+        else if (status == 503) {
+            shed.incrementAndGet();
+        }
+        else if (status == 504) {
+            timedOut.incrementAndGet();
+        }
+        else {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Encodes a synthetic camera frame as JPEG.
+     *
+     * @return the JPEG bytes
+     */
+    private static byte[] syntheticJpeg() {
+        SyntheticSource source = new SyntheticSource(640, 480, 0);
+        source.open();
+
+        Mat frame = new Mat();
+        source.read(frame);
+
+        MatOfByte encoded = new MatOfByte();
+        Imgcodecs.imencode(".jpg", frame, encoded);
+        byte[] bytes = encoded.toArray();
+
+        encoded.release();
+        frame.release();
+        return bytes;
+    }
+
+    /**
+     * Returns the given percentile of sorted latencies using the nearest-rank method.
+     *
+     * @param sorted the sorted latencies in nanoseconds
+     * @param percentile the percentile to return, from 0 to 100
+     * @return the latency at the percentile in milliseconds, or 0 if there are none
+     */
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1)) / 1e6;
+    }
+}
@@ -41,6 +41,18 @@ public class Loading {
         return progress;
     }
 
+    /**
+     * Updates the loading label and progress indicator to show how much
+     * of the startup has finished. Must be called on the JavaFX thread.
+     *
+     * @param message the message to show in the loading label
+     * @param fraction how much of the startup has finished, from 0 to 1
+     */
+    public void showProgress(String message, double fraction) {
+        cameraLoadingLabel.setText(message);
+        progress.setProgress(fraction);
+    }
+
     /**
      * Hides the camera view and displays the loading animation.
      */
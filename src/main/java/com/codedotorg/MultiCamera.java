@@ -0,0 +1,90 @@
+package com.codedotorg;
+
+import java.util.List;
+
+import com.codedotorg.metrics.PipelineMetrics;
+import com.codedotorg.modelmanager.InferencePool;
+import com.codedotorg.modelmanager.MicroBatcher;
+import com.codedotorg.modelmanager.ModelManager;
+import com.codedotorg.modelmanager.MultiCameraController;
+import com.codedotorg.modelmanager.PipelineConfig;
+import com.codedotorg.modelmanager.Prediction;
+import com.codedotorg.modelmanager.StreamPredictor;
+import com.codedotorg.source.FrameSource;
+
+public class MultiCamera {
+
+    /** The largest number of frames predicted in one Session.run, set with batch.max */
+    private static final int BATCH_MAX = PipelineConfig.getInt("batch.max", 8);
+
+    /** The longest time in milliseconds a frame waits for its batch to fill, set with batch.waitMs */
+    private static final double BATCH_WAIT = PipelineConfig.getDouble("batch.waitMs", 5);
+
+    /**
+     * Runs several cameras or streams at once without a window, sharing one
+     * model, and prints the latest prediction of each stream every second.
+     * By default the frames of all streams are micro-batched into single
+     * Session.run calls; with --workers they are spread over an InferencePool instead.
+     *
+     * Usage: MultiCamera [source,source,...] [--workers count] [--seconds duration]
+     *
+     * @param args the command line arguments
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String specs = null;
+        int workers = 0;
+        int seconds = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers") && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--seconds") && i + 1 < args.length) {
+                seconds = Integer.parseInt(args[++i]);
+            }
+            else {
+                specs = args[i];
+            }
+        }
+
+        // Load the OpenCV library locally
+        nu.pattern.OpenCV.loadLocally();
+
+        List<FrameSource> sources = specs != null ? FrameSource.allFromSpecs(specs) : FrameSource.allFromConfig();
+        ModelManager model = new ModelManager();
+
+        if (model.getModelProcessor().getSignature() == null) {
+            System.err.println("The model could not be loaded");
+            System.exit(1);
+        }
+
+        StreamPredictor predictor = workers > 0
+                ? new InferencePool(model, workers)
+                : new MicroBatcher(model, BATCH_MAX, BATCH_WAIT);
+
+        MultiCameraController controller = new MultiCameraController(sources, predictor);
+        System.out.println("Started " + controller.start() + " of " + sources.size() + " streams");
+
+        PipelineMetrics metrics = PipelineMetrics.get();
+        long start = System.nanoTime();
+
+        while (seconds <= 0 || System.nanoTime() - start < seconds * 1_000_000_000L) {
+            Thread.sleep(1000);
+
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("%.1f fps in, %.1f fps predicted", metrics.getCaptureFps(), metrics.getInferenceFps()));
+
+            for (int stream = 0; stream < controller.getStreamCount(); stream++) {
+                Prediction prediction = controller.getLatestPrediction(stream);
+                line.append(" | ").append(stream).append(": ")
+                        .append(prediction == null ? "-" : prediction.getClassName())
+                        .append(" (").append(controller.getDroppedFrames(stream)).append(" dropped)");
+            }
+
+            System.out.println(line);
+        }
+
+        controller.stop();
+    }
+}
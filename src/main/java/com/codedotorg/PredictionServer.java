@@ -0,0 +1,364 @@
+package com.codedotorg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import com.codedotorg.modelmanager.ModelManager;
+import com.codedotorg.modelmanager.PipelineConfig;
+import com.codedotorg.modelmanager.Prediction;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class PredictionServer {
+
+    /** The port the server listens on, set with server.port */
+    private static final int PORT = PipelineConfig.getInt("server.port", 8080);
+
+    /** The number of threads reading and decoding requests, set with server.threads */
+    private static final int THREADS = PipelineConfig.getInt("server.threads", 32);
+
+    /** The largest number of requests admitted at once before new ones get a 503, set with server.queue */
+    private static final int QUEUE = PipelineConfig.getInt("server.queue", 16);
+
+    /** The longest time in milliseconds a request waits for its prediction before getting a 504, set with server.timeoutMs */
+    private static final int TIMEOUT = PipelineConfig.getInt("server.timeoutMs", 1000);
+
+    /** The largest request body in bytes, larger ones get a 413, set with server.maxBodyBytes */
+    private static final int MAX_BODY = PipelineConfig.getInt("server.maxBodyBytes", 8 * 1024 * 1024);
+
+    /** The model predicting the frames, batched with the frames of other requests */
+    private final ModelManager model;
+
+    /** The number of requests admitted and not answered yet */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Runs the model behind a local HTTP endpoint without JavaFX, so thin
+     * clients can classify gestures by sending frames:
+     *
+     * POST /predict with a JPEG or PNG body, or with raw BGR pixels and
+     * ?width=&lt;w&gt;&amp;height=&lt;h&gt;, returns the prediction as JSON.
+     * GET /health returns the number of requests in flight.
+     *
+     * @param args the command line arguments, unused
+     * @throws IOException if the server cannot listen on the port
+     */
+    public static void main(String[] args) throws IOException {
+        // Load the OpenCV library locally
+        nu.pattern.OpenCV.loadLocally();
+
+        ModelManager model = new ModelManager();
+        if (model.getModelProcessor().getSignature() == null) {
+            System.err.println("The model could not be loaded");
+            System.exit(1);
+        }
+
+        try {
+            new PredictionServer(model).start(PORT);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Constructs a PredictionServer for the given model.
+     *
+     * @param model the loaded model
+     * @throws IllegalArgumentException if the settings would keep requests from being shed
+     */
+    public PredictionServer(ModelManager model) {
+        if (THREADS < 1 || QUEUE < 1) {
+            throw new IllegalArgumentException("server.threads and server.queue must be at least 1, but are "
+                    + THREADS + " and " + QUEUE);
+        }
+
+        // Admitted requests beyond what the model queue holds would be dropped by async.policy instead of shed
+        if (QUEUE > model.getAsyncCapacity()) {
+            throw new IllegalArgumentException("server.queue (" + QUEUE + ") must not be larger than async.queue ("
+                    + model.getAsyncCapacity() + ")");
+        }
+        this.model = model;
+    }
+
+    /**
+     * Starts listening on localhost on the given port.
+     *
+     * @param port the port to listen on
+     * @return the started server
+     * @throws IOException if the server cannot listen on the port
+     */
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+
+        // Handlers only decode and hand off, so their backlog stays short. If even that
+        // fills up, the server closes new connections instead of queuing them forever.
+        ThreadPoolExecutor handlers = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE), task -> {
+                    Thread thread = new Thread(task, "server-handler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        server.setExecutor(handlers);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/health", this::handleHealth);
+        server.start();
+
+        System.out.println("Prediction server listening on http://localhost:" + port + "/predict");
+        return server;
+    }
+
+    /**
+     * Answers a prediction request. Requests beyond the queue limit are shed
+     * right away with a 503 before their body is decoded, so an overloaded
+     * server keeps answering quickly instead of building up a backlog.
+     * Admitted requests do not hold a handler thread while they wait for
+     * their prediction, so the limit is reached however many threads there are.
+     * Bodies larger than server.maxBodyBytes get a 413 and are never read whole.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            try {
+                send(exchange, 405, "{\"error\": \"Use POST\"}");
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+
+        // Refuse a body that is announced as too large before reading any of it
+        if (contentLength(exchange) > MAX_BODY) {
+            try {
+                send(exchange, 413, "{\"error\": \"The body is larger than " + MAX_BODY + " bytes\"}");
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+
+        if (inFlight.incrementAndGet() > QUEUE) {
+            inFlight.decrementAndGet();
+            try {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "{\"error\": \"Too many requests\"}");
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+
+        boolean handedOff = false;
+        try {
+            // Read one byte more than allowed, so a body without a length cannot grow past the limit
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) {
+                send(exchange, 413, "{\"error\": \"The body is larger than " + MAX_BODY + " bytes\"}");
+                return;
+            }
+
+            Mat frame = decode(body, exchange.getRequestURI().getQuery());
+
+            if (frame == null) {
+                send(exchange, 400, "{\"error\": \"Send a JPEG or PNG image, or raw BGR pixels with width and height\"}");
+                return;
+            }
+
+            // The model queues a copy, which the deadline drops if it is still in line once the client has been answered
+            try {
+                model.getPredictionAsync(frame, TIMEOUT).whenComplete((prediction, error) -> answer(exchange, prediction, error));
+                handedOff = true;
+            } finally {
+                frame.release();
+            }
+        } finally {
+            if (!handedOff) {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Answers an admitted request once its prediction is done. This runs on
+     * the thread that completed the prediction, which is fine because the
+     * response is a few hundred bytes that fit in the socket buffer.
+     *
+     * @param exchange the request and its response
+     * @param prediction the prediction, or null if it failed
+     * @param error the reason the prediction failed, or null if it succeeded
+     */
+    private void answer(HttpExchange exchange, Prediction prediction, Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+
+        try {
+            if (cause == null) {
+                send(exchange, 200, toJson(prediction));
+            }
+            else if (cause instanceof TimeoutException) {
+                send(exchange, 504, "{\"error\": \"Prediction timed out\"}");
+            }
+            else if (cause instanceof RejectedExecutionException) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "{\"error\": \"Too many requests\"}");
+            }
+            else {
+                System.err.println("Failed to predict a frame");
+                cause.printStackTrace();
+                send(exchange, 500, "{\"error\": \"Prediction failed\"}");
+            }
+        } catch (IOException e) {
+            // The client went away before it could be answered
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answers a health check with the number of requests in flight.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, "{\"inFlight\": " + Math.max(0, inFlight.get())
+                    + ", \"queued\": " + model.getAsyncQueueDepth() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Decodes a request body into a BGR frame. Raw pixels are expected when
+     * the query gives the width and height, an encoded image otherwise.
+     *
+     * @param body the request body
+     * @param query the query of the request URI, or null if there is none
+     * @return the decoded frame, or null if the body is not a valid frame
+     */
+    private static Mat decode(byte[] body, String query) {
+        int width = queryInt(query, "width");
+        int height = queryInt(query, "height");
+
+        if (width > 0 && height > 0) {
+            // In long so a large width and height cannot overflow into a size that matches the body
+            long size = (long) width * height * 3;
+            if (size > MAX_BODY || size != body.length) {
+                return null;
+            }
+            Mat frame = new Mat(height, width, CvType.CV_8UC3);
+            frame.put(0, 0, body);
+            return frame;
+        }
+
+        MatOfByte encoded = new MatOfByte(body);
+        Mat frame = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        encoded.release();
+
+        if (frame.empty()) {
+            frame.release();
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the length of the request body announced by the client.
+     *
+     * @param exchange the request and its response
+     * @return the Content-Length of the request, or -1 if it is missing or not a number
+     */
+    private static long contentLength(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the value of an integer query parameter.
+     *
+     * @param query the query of the request URI, or null if there is none
+     * @param name the name of the parameter
+     * @return the value of the parameter, or -1 if it is missing or not a number
+     */
+    private static int queryInt(String query, String name) {
+        if (query == null) {
+            return -1;
+        }
+
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(parameter.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Converts a prediction to JSON with the probability of every class.
+     *
+     * @param prediction the prediction to convert
+     * @return the prediction as JSON
+     */
+    private static String toJson(Prediction prediction) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"className\": \"").append(prediction.getClassName().replace("\"", "\\\"")).append("\"");
+        json.append(", \"classIndex\": ").append(prediction.getClassIndex());
+        json.append(", \"confidence\": ").append(String.format(Locale.ROOT, "%.4f", prediction.getConfidence()));
+        json.append(", \"probabilities\": [");
+        for (int i = 0; i < prediction.getNumClasses(); i++) {
+            json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.4f", prediction.getProbability(i)));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status code
+     * @param json the response body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
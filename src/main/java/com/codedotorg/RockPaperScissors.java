@@ -1,11 +1,19 @@
 package com.codedotorg;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.codedotorg.modelmanager.CameraController;
+import com.codedotorg.modelmanager.DecisionEngine;
+import com.codedotorg.modelmanager.FxPredictionDispatcher;
 import com.codedotorg.modelmanager.ModelManager;
+import com.codedotorg.modelmanager.PipelineConfig;
+import com.codedotorg.modelmanager.Prediction;
 
-import javafx.animation.KeyFrame;
 import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.stage.Stage;
@@ -31,13 +39,29 @@ public class RockPaperScissors {
     /** Controls the camera capture and provides frames to the TensorFlow model for classification */
     private CameraController cameraController;
 
-    /** The Timeline to manage how often a prediction is made */
-    private Timeline timeline;
+    /** The minimum time between two rounds, set with round.seconds */
+    private static final long ROUND_INTERVAL = (long) (PipelineConfig.getDouble("round.seconds", 3) * 1_000_000_000L);
+
+    /** Whether predictions are currently used to play rounds, only touched on the JavaFX thread */
+    private boolean playing;
+
+    /** Whether the game is already listening for predictions */
+    private boolean listening;
+
+    /** Decides the user's gesture once it has been stable for a few frames */
+    private DecisionEngine decisionEngine;
+
+    /** The System.nanoTime() when the last round was played, or when the game started */
+    private long lastRoundTime;
+
+    /** The number of startup tasks (camera and model) that have to finish before capturing */
+    private static final int STARTUP_TASKS = 2;
 
     /**
      * Constructor for the RockPaperScissors class.
-     * Sets up the window using the primaryStage, initializes the model
-     * and camera capture, sets up the game scenes and logic.
+     * Sets up the window using the primaryStage, creates the camera
+     * controller, sets up the game scenes and logic. The camera and the
+     * model are loaded later in the background by startCameraAndModel().
      *
      * @param primaryStage the primary stage for the application
      */
@@ -45,9 +69,8 @@ public class RockPaperScissors {
         // Set up the window using the primaryStage
         setUpWindow(primaryStage);
 
-        // Set up the model and camera capture
+        // Set up the camera capture, the camera itself is opened in the background
         cameraController = new CameraController();
-        model = new ModelManager();
 
         // Set up the game scenes and logic
         game = new MainScene();
@@ -86,9 +109,8 @@ public class RockPaperScissors {
 
     /**
      * Loads the main screen of the game, setting it to starting defaults
-     * and displaying the window. Captures the camera view and sets the model
-     * for the cameraController object. Retrieves the Loading object and
-     * shows the loading animation while the camera is loading.
+     * and displaying the window. Retrieves the Loading object, shows the
+     * loading animation and starts loading the camera and the model.
      */
     public void loadMainScreen() {
         // Set the game to starting defaults
@@ -97,61 +119,148 @@ public class RockPaperScissors {
         // Display the window
         window.show();
 
-        // Capture the camera view and set the model for the cameraController object
-        cameraController.captureCamera(game.getCameraView(), model);
-
         // Retrieve the Loading object
         Loading cameraLoading = game.getLoadingAnimation();
 
         // Show the loading animation while the camera is loading
         cameraLoading.showLoadingAnimation(game.getCameraView());
+
+        // Load the camera and the model without blocking the window
+        startCameraAndModel(cameraLoading);
     }
 
     /**
-     * Updates the game by getting the predicted class and score from
-     * the CameraController, showing the user's response and confidence
-     * score in the app, getting the computer's choice, getting the
-     * winner, and loading the game over screen if the game is over.
+     * Opens the camera and loads the model at the same time on two
+     * background threads, reporting progress in the loading animation as
+     * each one finishes. Once both are ready, the camera capture is started
+     * with the model on the JavaFX thread.
+     *
+     * @param cameraLoading the loading animation to report progress to
      */
-    public void updateGame() {
-        timeline = new Timeline(new KeyFrame(Duration.seconds(3), event -> {
-            // Get the predicted class and score from the CameraController
-            String predictedClass = cameraController.getPredictedClass();
-            double predictedScore = cameraController.getPredictedScore();
-
-            if (predictedClass != null) {
-                // Show the user's response and confidence score in the app
-                game.showUserResponse(predictedClass, predictedScore);
-
-                // Get the computer's choice
-                String computerChoice = logic.getComputerChoice();
-
-                // Get the winner
-                String winner = logic.determineWinner(predictedClass, computerChoice);
-                
-                if (logic.isGameOver()) {
-                    // Create a pause transition of 3 seconds
-                    PauseTransition pause = new PauseTransition(Duration.seconds(3));
-
-                    // Set the action to execute after the pause
-                    pause.setOnFinished(e -> loadGameOver(winner));
-
-                    // Start the pause transition
-                    pause.play();
-                }
+    public void startCameraAndModel(Loading cameraLoading) {
+        ExecutorService startup = Executors.newFixedThreadPool(STARTUP_TASKS, task -> {
+            Thread thread = new Thread(task, "startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger finished = new AtomicInteger();
+        cameraLoading.showProgress("Loading camera and model...", 0);
+
+        CompletableFuture<Boolean> cameraReady = CompletableFuture
+                .supplyAsync(cameraController::openCamera, startup)
+                .whenComplete((opened, error) -> reportProgress(cameraLoading, "Camera ready", finished));
+
+        CompletableFuture<ModelManager> modelReady = CompletableFuture
+                .supplyAsync(ModelManager::new, startup)
+                .whenComplete((loaded, error) -> reportProgress(cameraLoading, "Model ready", finished));
+
+        cameraReady.thenAcceptBoth(modelReady, (opened, loaded) -> Platform.runLater(() -> {
+            // Capture the camera view and set the model for the cameraController object
+            model = loaded;
+            updateGame();
+            cameraController.captureCamera(game.getCameraView(), model);
+        })).whenComplete((ignored, error) -> {
+            startup.shutdown();
+
+            if (error != null) {
+                System.err.println("Failed to start the camera and model");
+                error.printStackTrace();
             }
-        }));
+        });
+    }
 
-        // Specify that the animation should repeat indefinitely
-        timeline.setCycleCount(Timeline.INDEFINITE);
+    /**
+     * Shows in the loading animation that one of the startup tasks has finished.
+     *
+     * @param cameraLoading the loading animation to report progress to
+     * @param message the message describing the task that finished
+     * @param finished the number of startup tasks that have finished so far
+     */
+    private void reportProgress(Loading cameraLoading, String message, AtomicInteger finished) {
+        double fraction = (double) finished.incrementAndGet() / STARTUP_TASKS;
+        String text = fraction < 1 ? message + ", still loading..." : "Starting camera...";
+
+        Platform.runLater(() -> cameraLoading.showProgress(text, fraction));
+    }
 
-        // Start the animation
-        timeline.play();
+    /**
+     * Updates the game by listening for the predictions pushed by the
+     * CameraController once the model is loaded. Every prediction is shown
+     * in the app, while rounds are played with the gestures decided by the
+     * DecisionEngine. Both are delivered on the JavaFX thread, coalesced so
+     * only the newest one is handled if the UI falls behind.
+     */
+    public void updateGame() {
+        if (!listening && model != null) {
+            listening = true;
+            decisionEngine = new DecisionEngine(model.getModelProcessor().getLabels(),
+                    new FxPredictionDispatcher(this::playRound));
+
+            cameraController.addPredictionListener(new FxPredictionDispatcher(this::showPrediction));
+            cameraController.addPredictionListener(decisionEngine);
+        }
+
+        playing = true;
+        lastRoundTime = System.nanoTime();
+    }
+
+    /**
+     * Shows the user's response and confidence score in the app for
+     * every new prediction while a game is being played.
+     *
+     * @param prediction the newest prediction from the model
+     */
+    private void showPrediction(Prediction prediction) {
+        if (playing) {
+            game.showUserResponse(prediction.getClassName(), prediction.getConfidence());
+        }
+    }
+
+    /**
+     * Plays a round with the gesture decided by the DecisionEngine by
+     * getting the computer's choice, getting the winner, and loading the
+     * game over screen if the game is over. Decisions that come in less
+     * than a round interval after the previous round are ignored.
+     *
+     * @param decision the gesture decided by the DecisionEngine
+     */
+    private void playRound(Prediction decision) {
+        // Give the player time to change their hand between rounds
+        if (!playing || decision.getTimestamp() - lastRoundTime < ROUND_INTERVAL) {
+            return;
+        }
+        lastRoundTime = decision.getTimestamp();
+
+        String predictedClass = decision.getClassName();
+
+        // Show the decided response and confidence score in the app
+        game.showUserResponse(predictedClass, decision.getConfidence());
+
+        // Get the computer's choice
+        String computerChoice = logic.getComputerChoice();
+
+        // Get the winner
+        String winner = logic.determineWinner(predictedClass, computerChoice);
+
+        if (logic.isGameOver()) {
+            // Stop playing rounds while the result is shown
+            playing = false;
+
+            // Create a pause transition of 3 seconds
+            PauseTransition pause = new PauseTransition(Duration.seconds(3));
+
+            // Set the action to execute after the pause
+            pause.setOnFinished(e -> loadGameOver(winner));
+
+            // Start the pause transition
+            pause.play();
+        }
     }
 
     /**
      * Loads the Game Over scene with the winner's name and sets the
-     * playAgainButton to reset the game when clicked. Stops the timeline.
+     * playAgainButton to reset the game when clicked. Stops playing rounds.
      *
      * @param winner the name of the winner of the game
      */
@@ -170,14 +279,14 @@ public class RockPaperScissors {
         // Set the GameOverScene in the window
         window.setScene(gameOverScene);
 
-        // Stop the timeline
-        timeline.stop();
+        // Stop playing rounds
+        playing = false;
     }
 
     /**
      * Resets the game by resetting the game logic, creating a new main scene,
-     * and setting the window to display the new scene. If a timeline is currently
-     * running, it is resumed.
+     * and setting the window to display the new scene. If the game is already
+     * listening for predictions, rounds resume with the next prediction.
      */
     public void resetGame() {
         // Reset the GameLogic
@@ -189,9 +298,11 @@ public class RockPaperScissors {
         // Set the MainScene in the window
         window.setScene(mainScene);
         
-        // Play the timeline if it is not null
-        if (timeline != null) {
-            timeline.play();
+        // Resume playing rounds if the game is listening for predictions
+        if (listening) {
+            playing = true;
+            lastRoundTime = System.nanoTime();
+            decisionEngine.reset();
         }
     }
 
@@ -0,0 +1,18 @@
+package com.codedotorg.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.codedotorg.FrameCapture")
+@Label("Frame Capture")
+@Category({"Rock Paper Scissors", "Frames"})
+@Description("Reading one frame from the camera")
+public class FrameCaptureEvent extends Event {
+
+    /** The sequence number of the captured frame */
+    @Label("Frame Sequence")
+    public long sequence;
+}
@@ -0,0 +1,26 @@
+package com.codedotorg.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.codedotorg.FrameInference")
+@Label("Frame Inference")
+@Category({"Rock Paper Scissors", "Frames"})
+@Description("Running the model on one frame")
+public class FrameInferenceEvent extends Event {
+
+    /** The sequence number of the frame, or -1 if it did not come from the camera */
+    @Label("Frame Sequence")
+    public long sequence;
+
+    /** The index of the most likely class */
+    @Label("Predicted Class Index")
+    public int classIndex;
+
+    /** The confidence score of the most likely class */
+    @Label("Confidence")
+    public float confidence;
+}
@@ -0,0 +1,18 @@
+package com.codedotorg.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.codedotorg.FramePreprocess")
+@Label("Frame Preprocess")
+@Category({"Rock Paper Scissors", "Frames"})
+@Description("Resizing and normalizing one frame for the model")
+public class FramePreprocessEvent extends Event {
+
+    /** The sequence number of the frame, or -1 if it did not come from the camera */
+    @Label("Frame Sequence")
+    public long sequence;
+}
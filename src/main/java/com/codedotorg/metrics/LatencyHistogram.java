@@ -0,0 +1,151 @@
+package com.codedotorg.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    /** The number of sub-buckets per power of two, giving about 3% precision */
+    private static final int SUB_BUCKETS = 32;
+
+    /** Values below this are counted in their own bucket */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    /** The highest power of two tracked, values above it go in the last bucket (about 18 minutes) */
+    private static final int MAX_EXPONENT = 40;
+
+    /** The number of buckets */
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 5) * SUB_BUCKETS;
+
+    /** The number of values recorded in each bucket */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The number of values recorded */
+    private final AtomicLong count = new AtomicLong();
+
+    /** The sum of the values recorded, in microseconds */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** The largest value recorded, in microseconds */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration. Only atomic increments are used, so any number
+     * of threads can record at the same time without locking.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean in microseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) sum.get() / recorded;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the largest value in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded
+     * values fall, rounded up to the end of its bucket.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the value at the percentile in microseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clears every value recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the bucket a value is counted in. Small values get their own
+     * bucket, larger values share one of SUB_BUCKETS buckets per power of two.
+     *
+     * @param value the value in microseconds
+     * @return the index of the bucket
+     */
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        int index = LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the largest value of the bucket in microseconds
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long mantissa = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
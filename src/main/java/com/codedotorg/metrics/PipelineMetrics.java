@@ -0,0 +1,292 @@
+package com.codedotorg.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    /** The JMX domain the metrics are published under */
+    private static final String DOMAIN = "com.codedotorg";
+
+    /** The metrics of the app, published over JMX when first used */
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    /** Time spent reading a frame from the camera */
+    private final StageMetrics capture = new StageMetrics();
+
+    /** Time spent converting a frame for the camera preview */
+    private final StageMetrics preview = new StageMetrics();
+
+    /** Time spent preparing a frame for the model */
+    private final StageMetrics preprocess = new StageMetrics();
+
+    /** Time spent running the model */
+    private final StageMetrics inference = new StageMetrics();
+
+    /** Time between a prediction being made and the UI using it */
+    private final StageMetrics uiHandoff = new StageMetrics();
+
+    /** Time between a gesture first standing out and it being decided */
+    private final StageMetrics decision = new StageMetrics();
+
+    /** Counts the captured frames */
+    private final RateCounter capturedFrames = new RateCounter();
+
+    /** Counts the inferences */
+    private final RateCounter inferences = new RateCounter();
+
+    /** Counts the frames dropped between capture and inference */
+    private final LongAdder droppedFrames = new LongAdder();
+
+    /** Counts the frames that reused the last prediction because the scene did not change */
+    private final LongAdder skippedInferences = new LongAdder();
+
+    /** Counts the queued prediction requests dropped before reaching the model */
+    private final LongAdder droppedRequests = new LongAdder();
+
+    /** Counts the frames found in the prediction cache */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /** Counts the frames not found in the prediction cache */
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /** The total time spent predicting the frames not found in the prediction cache */
+    private final LongAdder cacheMissNanos = new LongAdder();
+
+    /**
+     * Constructs the PipelineMetrics and registers it and each stage as MBeans.
+     */
+    private PipelineMetrics() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=Pipeline"));
+            registerStage(server, "capture", capture);
+            registerStage(server, "preview", preview);
+            registerStage(server, "preprocess", preprocess);
+            registerStage(server, "inference", inference);
+            registerStage(server, "uiHandoff", uiHandoff);
+            registerStage(server, "decision", decision);
+        } catch (JMException e) {
+            System.err.println("Failed to publish the pipeline metrics");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the metrics of the app.
+     *
+     * @return the PipelineMetrics instance
+     */
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics of reading frames from the camera.
+     *
+     * @return the capture stage metrics
+     */
+    public StageMetrics capture() {
+        return capture;
+    }
+
+    /**
+     * Returns the metrics of converting frames for the camera preview.
+     *
+     * @return the preview stage metrics
+     */
+    public StageMetrics preview() {
+        return preview;
+    }
+
+    /**
+     * Returns the metrics of preparing frames for the model.
+     *
+     * @return the preprocessing stage metrics
+     */
+    public StageMetrics preprocess() {
+        return preprocess;
+    }
+
+    /**
+     * Returns the metrics of running the model.
+     *
+     * @return the inference stage metrics
+     */
+    public StageMetrics inference() {
+        return inference;
+    }
+
+    /**
+     * Returns the metrics of handing predictions to the UI.
+     *
+     * @return the UI handoff stage metrics
+     */
+    public StageMetrics uiHandoff() {
+        return uiHandoff;
+    }
+
+    /**
+     * Returns the metrics of deciding the user's gesture.
+     *
+     * @return the decision stage metrics
+     */
+    public StageMetrics decision() {
+        return decision;
+    }
+
+    /**
+     * Counts one captured frame.
+     */
+    public void frameCaptured() {
+        capturedFrames.mark();
+    }
+
+    /**
+     * Counts one inference.
+     */
+    public void inferenceDone() {
+        inferences.mark();
+    }
+
+    /**
+     * Counts one frame dropped between capture and inference.
+     */
+    public void frameDropped() {
+        droppedFrames.increment();
+    }
+
+    /**
+     * Counts one frame that reused the last prediction instead of running the model.
+     */
+    public void inferenceSkipped() {
+        skippedInferences.increment();
+    }
+
+    /**
+     * Counts one queued prediction request dropped before reaching the model,
+     * because it timed out, was cancelled or made room for a newer one.
+     */
+    public void requestDropped() {
+        droppedRequests.increment();
+    }
+
+    /**
+     * Counts one frame found in the prediction cache.
+     */
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Counts one frame not found in the prediction cache.
+     *
+     * @param elapsedNanos how long the model took to predict the frame
+     */
+    public void cacheMiss(long elapsedNanos) {
+        cacheMisses.increment();
+        cacheMissNanos.add(elapsedNanos);
+    }
+
+    /**
+     * Returns the number of frames captured per second.
+     *
+     * @return the capture frame rate
+     */
+    public double getCaptureFps() {
+        return capturedFrames.getRate();
+    }
+
+    /**
+     * Returns the number of inferences run per second.
+     *
+     * @return the inference rate
+     */
+    public double getInferenceFps() {
+        return inferences.getRate();
+    }
+
+    /**
+     * Returns the number of frames captured since startup.
+     *
+     * @return the total number of captured frames
+     */
+    public long getCapturedFrames() {
+        return capturedFrames.getTotal();
+    }
+
+    /**
+     * Returns the number of inferences run since startup.
+     *
+     * @return the total number of inferences
+     */
+    public long getInferences() {
+        return inferences.getTotal();
+    }
+
+    /**
+     * Returns the number of frames dropped between capture and inference since startup.
+     *
+     * @return the total number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    /**
+     * Returns the number of frames that reused the last prediction since startup.
+     *
+     * @return the total number of skipped inferences
+     */
+    public long getSkippedInferences() {
+        return skippedInferences.sum();
+    }
+
+    /**
+     * Returns the number of queued prediction requests dropped since startup.
+     *
+     * @return the total number of dropped requests
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.sum();
+    }
+
+    /**
+     * Returns the share of frames found in the prediction cache.
+     *
+     * @return the cache hit rate between 0 and 1
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns an estimate of the inference time saved by the prediction cache,
+     * based on how long the model took on average for the frames not found.
+     *
+     * @return the saved time in milliseconds
+     */
+    public long getCacheSavedMillis() {
+        long misses = cacheMisses.sum();
+        return misses == 0 ? 0 : cacheHits.sum() * (cacheMissNanos.sum() / misses) / 1_000_000;
+    }
+
+    /**
+     * Registers the metrics of one stage as an MBean.
+     *
+     * @param server the MBean server to register with
+     * @param name the name of the stage
+     * @param stage the metrics of the stage
+     * @throws JMException if the MBean cannot be registered
+     */
+    private static void registerStage(MBeanServer server, String name, StageMetrics stage) throws JMException {
+        server.registerMBean(stage, new ObjectName(DOMAIN + ":type=Stage,name=" + name));
+    }
+}
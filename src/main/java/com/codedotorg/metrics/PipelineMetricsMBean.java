@@ -0,0 +1,71 @@
+package com.codedotorg.metrics;
+
+public interface PipelineMetricsMBean {
+
+    /**
+     * Returns the number of frames captured per second.
+     *
+     * @return the capture frame rate
+     */
+    double getCaptureFps();
+
+    /**
+     * Returns the number of inferences run per second.
+     *
+     * @return the inference rate
+     */
+    double getInferenceFps();
+
+    /**
+     * Returns the number of frames captured since startup.
+     *
+     * @return the total number of captured frames
+     */
+    long getCapturedFrames();
+
+    /**
+     * Returns the number of inferences run since startup.
+     *
+     * @return the total number of inferences
+     */
+    long getInferences();
+
+    /**
+     * Returns the number of captured frames replaced by a newer frame
+     * before the model could process them.
+     *
+     * @return the total number of dropped frames
+     */
+    long getDroppedFrames();
+
+    /**
+     * Returns the number of frames that reused the last prediction because
+     * the scene had not changed enough to run the model again.
+     *
+     * @return the total number of skipped inferences
+     */
+    long getSkippedInferences();
+
+    /**
+     * Returns the number of requests to getPredictionAsync() or the prediction
+     * server dropped before reaching the model, because their deadline passed,
+     * they were cancelled or the queue was full.
+     *
+     * @return the total number of dropped requests
+     */
+    long getDroppedRequests();
+
+    /**
+     * Returns the share of frames whose prediction was found in the prediction cache.
+     *
+     * @return the cache hit rate between 0 and 1
+     */
+    double getCacheHitRate();
+
+    /**
+     * Returns an estimate of the inference time saved by the prediction cache.
+     *
+     * @return the saved time in milliseconds
+     */
+    long getCacheSavedMillis();
+}
@@ -0,0 +1,59 @@
+package com.codedotorg.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateCounter {
+
+    /** The length of the window the rate is measured over */
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    /** The number of events counted since the counter was created */
+    private final AtomicLong total = new AtomicLong();
+
+    /** The start of the current window */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    /** The number of events counted in the current window */
+    private final AtomicLong windowCount = new AtomicLong();
+
+    /** The events per second measured over the last full window */
+    private volatile double rate;
+
+    /**
+     * Counts one event. When the current one-second window is over, the
+     * thread that notices it computes the rate and starts a new window.
+     */
+    public void mark() {
+        total.incrementAndGet();
+        windowCount.incrementAndGet();
+
+        long now = System.nanoTime();
+        long start = windowStart.get();
+
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            rate = windowCount.getAndSet(0) * 1e9 / (now - start);
+        }
+    }
+
+    /**
+     * Returns the events per second measured over the last full window.
+     * Returns 0 once no event has been counted for more than two windows.
+     *
+     * @return the events per second
+     */
+    public double getRate() {
+        if (System.nanoTime() - windowStart.get() > 2 * WINDOW_NANOS) {
+            return 0;
+        }
+        return rate;
+    }
+
+    /**
+     * Returns the number of events counted since the counter was created.
+     *
+     * @return the total number of events
+     */
+    public long getTotal() {
+        return total.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.codedotorg.metrics;
+
+public class StageMetrics implements StageMetricsMBean {
+
+    /** The durations recorded for the stage */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Records how long the stage took, measured from the given start time.
+     *
+     * @param startNanos the System.nanoTime() when the stage started
+     */
+    public void recordSince(long startNanos) {
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records how long the stage took.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Returns the number of times the stage ran.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    /**
+     * Returns the mean duration of the stage.
+     *
+     * @return the mean duration in microseconds
+     */
+    public double getMeanMicros() {
+        return histogram.getMean();
+    }
+
+    /**
+     * Returns the median duration of the stage.
+     *
+     * @return the 50th percentile in microseconds
+     */
+    public long getP50Micros() {
+        return histogram.getPercentile(50);
+    }
+
+    /**
+     * Returns the 90th percentile duration of the stage.
+     *
+     * @return the 90th percentile in microseconds
+     */
+    public long getP90Micros() {
+        return histogram.getPercentile(90);
+    }
+
+    /**
+     * Returns the 99th percentile duration of the stage.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    public long getP99Micros() {
+        return histogram.getPercentile(99);
+    }
+
+    /**
+     * Returns the longest duration of the stage.
+     *
+     * @return the longest duration in microseconds
+     */
+    public long getMaxMicros() {
+        return histogram.getMax();
+    }
+
+    /**
+     * Clears the recorded durations.
+     */
+    public void reset() {
+        histogram.reset();
+    }
+}
@@ -0,0 +1,51 @@
+package com.codedotorg.metrics;
+
+public interface StageMetricsMBean {
+
+    /**
+     * Returns the number of times the stage ran.
+     *
+     * @return the number of recorded durations
+     */
+    long getCount();
+
+    /**
+     * Returns the mean duration of the stage.
+     *
+     * @return the mean duration in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Returns the median duration of the stage.
+     *
+     * @return the 50th percentile in microseconds
+     */
+    long getP50Micros();
+
+    /**
+     * Returns the 90th percentile duration of the stage.
+     *
+     * @return the 90th percentile in microseconds
+     */
+    long getP90Micros();
+
+    /**
+     * Returns the 99th percentile duration of the stage.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    long getP99Micros();
+
+    /**
+     * Returns the longest duration of the stage.
+     *
+     * @return the longest duration in microseconds
+     */
+    long getMaxMicros();
+
+    /**
+     * Clears the recorded durations.
+     */
+    void reset();
+}
@@ -0,0 +1,40 @@
+package com.codedotorg.modelmanager;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+final class BatchCollector {
+
+    /**
+     * Not instantiable, use the static methods.
+     */
+    private BatchCollector() {
+    }
+
+    /**
+     * Collects the next batch from a queue. Waits for the first item, then
+     * gives other items until maxWait after the first one to join, so a
+     * batch is closed once it holds maxBatch items or its first item has
+     * waited long enough, whichever comes first.
+     *
+     * @param queue the queue to take the items from
+     * @param batch the list to add the items to
+     * @param maxBatch the largest number of items in the batch
+     * @param maxWait the longest time in nanoseconds to wait for more items after the first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    static <T> void collect(BlockingQueue<T> queue, List<T> batch, int maxBatch, long maxWait)
+            throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWait;
+
+        while (batch.size() < maxBatch) {
+            T next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+}
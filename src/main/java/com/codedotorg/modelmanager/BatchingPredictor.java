@@ -0,0 +1,304 @@
+package com.codedotorg.modelmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+
+import com.codedotorg.metrics.PipelineMetrics;
+
+public class BatchingPredictor {
+
+    /** Runs the batched predictions */
+    private final ModelPredictor predictor;
+
+    /** The prediction cache of the model, or null if it is disabled */
+    private final PredictionCache cache;
+
+    /** The largest number of frames predicted in one Session.run */
+    private final int maxBatch;
+
+    /** The longest time in nanoseconds the first frame of a batch waits for more frames */
+    private final long maxWait;
+
+    /** What submit() does when the queue is full */
+    private final OverflowPolicy policy;
+
+    /** The frames waiting for a batch, oldest first */
+    private final BlockingQueue<Request> queue;
+
+    /** Prepares the batches, only used by the batching thread and created on its first batch */
+    private FramePreprocessor batchPreprocessor;
+
+    /** The thread collecting and predicting the batches */
+    private final Thread batchThread;
+
+    /**
+     * Constructs a BatchingPredictor that predicts independent frames, such
+     * as the frames of separate requests, in batches. Unlike a MicroBatcher,
+     * every frame gets its own prediction and none is replaced by a newer one,
+     * so the queue is bounded and frames are rejected once it is full.
+     *
+     * @param model the loaded model
+     * @param maxBatch the largest number of frames in a batch
+     * @param maxWaitMillis the longest time the first frame of a batch waits for more frames
+     * @param capacity the largest number of frames waiting for a batch
+     */
+    public BatchingPredictor(ModelManager model, int maxBatch, double maxWaitMillis, int capacity) {
+        this(model, maxBatch, maxWaitMillis, capacity, OverflowPolicy.REJECT);
+    }
+
+    /**
+     * Constructs a BatchingPredictor with the given policy for a full queue.
+     *
+     * @param model the loaded model
+     * @param maxBatch the largest number of frames in a batch
+     * @param maxWaitMillis the longest time the first frame of a batch waits for more frames
+     * @param capacity the largest number of frames waiting for a batch
+     * @param policy what submit() does when the queue is full
+     */
+    public BatchingPredictor(ModelManager model, int maxBatch, double maxWaitMillis, int capacity, OverflowPolicy policy) {
+        this.predictor = model.getModelPredictor();
+        this.cache = model.getCache();
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWait = (long) (maxWaitMillis * 1_000_000);
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+
+        batchThread = new Thread(this::runBatches, "batching-predictor");
+        batchThread.setDaemon(true);
+        batchThread.start();
+    }
+
+    /**
+     * Queues a frame for the next batch with no deadline.
+     *
+     * @param frame the BGR frame, which must not be used by the caller afterwards
+     * @return a future completed with the prediction
+     * @see #submit(Mat, long)
+     */
+    public CompletableFuture<Prediction> submit(Mat frame) {
+        return submit(frame, 0);
+    }
+
+    /**
+     * Queues a frame for the next batch. The batcher takes ownership of the
+     * frame and releases it once it has been predicted or dropped. When the
+     * queue is full, the overflow policy decides whether the oldest frame is
+     * dropped, this frame is rejected or the caller waits for room.
+     *
+     * A frame still waiting when its timeout runs out, or whose future was
+     * cancelled, is dropped before it reaches the model, so stale frames
+     * never take a place in a batch.
+     * When the prediction cache of the model is enabled, a frame that looks
+     * like a recent one is answered from the cache without being queued.
+     *
+     * @param frame the BGR frame, which must not be used by the caller afterwards
+     * @param timeoutMillis the longest time to wait for the prediction, or 0 for no deadline
+     * @return a future completed with the prediction, or failed with a
+     *         RejectedExecutionException if the frame was dropped to make room
+     *         or rejected, or with a TimeoutException if the deadline passed
+     */
+    public CompletableFuture<Prediction> submit(Mat frame, long timeoutMillis) {
+        long hash = 0;
+
+        // A frame found in the prediction cache is answered right away and never joins a batch
+        if (cache != null) {
+            hash = cache.hash(frame);
+            float[] probabilities = cache.get(hash);
+
+            if (probabilities != null) {
+                PipelineMetrics.get().cacheHit();
+                frame.release();
+                return CompletableFuture.completedFuture(predictor.toPrediction(probabilities));
+            }
+        }
+
+        Request request = new Request(frame, hash);
+
+        // The timeout fails the future on time even if the frame is still in line
+        if (timeoutMillis > 0) {
+            request.result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        if (policy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drop(request, "Interrupted while waiting for room in the prediction queue");
+            }
+        }
+        else if (policy == OverflowPolicy.DROP_OLDEST) {
+            while (!queue.offer(request)) {
+                Request oldest = queue.poll();
+                if (oldest != null) {
+                    drop(oldest, "Replaced by a newer frame");
+                }
+            }
+        }
+        else if (!queue.offer(request)) {
+            drop(request, "The prediction queue is full");
+        }
+
+        return request.result;
+    }
+
+    /**
+     * Returns the number of frames waiting for a batch.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the batching thread, fails the frames still waiting and releases
+     * the batch buffers once the thread has stopped.
+     */
+    public void close() {
+        batchThread.interrupt();
+
+        try {
+            batchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Request request = queue.poll(); request != null; request = queue.poll()) {
+            drop(request, "The predictor was closed");
+        }
+
+        if (!batchThread.isAlive() && batchPreprocessor != null) {
+            batchPreprocessor.release();
+        }
+    }
+
+    /**
+     * Releases the frame of a request that will not be predicted and fails
+     * its future, unless it already timed out or was cancelled.
+     *
+     * @param request the request to drop
+     * @param reason the message of the RejectedExecutionException
+     */
+    private static void drop(Request request, String reason) {
+        PipelineMetrics.get().requestDropped();
+        request.frame.release();
+        request.result.completeExceptionally(new RejectedExecutionException(reason));
+    }
+
+    /**
+     * Waits for a frame, collects more frames until the batch is full or the
+     * wait is over, then predicts them all at once and completes their futures.
+     */
+    private void runBatches() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        List<Mat> frames = new ArrayList<>(maxBatch);
+
+        try {
+            while (true) {
+                batch.clear();
+                frames.clear();
+
+                // Wait for the first frame, then give other frames until the deadline to join
+                BatchCollector.collect(queue, batch, maxBatch, maxWait);
+
+                // Frames can time out while they wait or while the batch fills, so check right before the model runs
+                batch.removeIf(request -> request.result.isDone() && release(request));
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                for (Request request : batch) {
+                    frames.add(request.frame);
+                }
+
+                predictBatch(batch, frames);
+            }
+        } catch (InterruptedException e) {
+            // The predictor was closed
+        }
+    }
+
+    /**
+     * Releases the frame of a request that is no longer waited for.
+     *
+     * @param request the stale request
+     * @return always true, so it can be used to remove the request from a list
+     */
+    private static boolean release(Request request) {
+        PipelineMetrics.get().requestDropped();
+        request.frame.release();
+        return true;
+    }
+
+    /**
+     * Predicts a batch, completes the future of each frame and releases the frames.
+     *
+     * @param batch the requests of the batch
+     * @param frames the frame of each request
+     */
+    private void predictBatch(List<Request> batch, List<Mat> frames) {
+        try {
+            // The batcher has its own buffers, so it does not wait for other batchers of the model
+            if (batchPreprocessor == null) {
+                batchPreprocessor = predictor.newBatchPreprocessor(maxBatch);
+            }
+            long start = System.nanoTime();
+            float[][] probabilities = predictor.predictBatch(frames, batchPreprocessor);
+
+            // Each frame of the batch is charged its share of the batch time as the cost of its miss
+            long elapsedPerFrame = (System.nanoTime() - start) / batch.size();
+
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+
+                if (cache != null) {
+                    PipelineMetrics.get().cacheMiss(elapsedPerFrame);
+                    cache.put(request.hash, probabilities[i]);
+                }
+                request.result.complete(predictor.toPrediction(probabilities[i]));
+            }
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        } finally {
+            for (Mat frame : frames) {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * A frame waiting for its prediction.
+     */
+    private static class Request {
+
+        /** The frame to predict, owned by the batcher */
+        private final Mat frame;
+
+        /** The perceptual hash of the frame, used to cache the prediction */
+        private final long hash;
+
+        /** Completed with the prediction of the frame */
+        private final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+        /**
+         * Constructs a Request.
+         *
+         * @param frame the frame to predict
+         * @param hash the perceptual hash of the frame, or 0 if the cache is disabled
+         */
+        private Request(Mat frame, long hash) {
+            this.frame = frame;
+            this.hash = hash;
+        }
+    }
+}
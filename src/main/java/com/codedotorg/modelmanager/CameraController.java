@@ -1,80 +1,183 @@
 package com.codedotorg.modelmanager;
 
-import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opencv.core.*;
-import org.opencv.videoio.VideoCapture;
+import org.opencv.imgproc.Imgproc;
+
+import com.codedotorg.metrics.FrameCaptureEvent;
+import com.codedotorg.metrics.PipelineMetrics;
+import com.codedotorg.source.FrameSource;
 
 import javafx.application.Platform;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-
-import org.opencv.imgcodecs.Imgcodecs;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
 public class CameraController {
 
-    /** The predicted class from the model */
-    private String predictedClass;
+    /** The latest prediction from the model, replaced as a whole so readers never see a mix of two predictions */
+    private volatile Prediction latestPrediction;
+
+    /** The listeners notified each time the model makes a prediction */
+    private final List<PredictionListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Whether to skip the model when the scene has not changed, set with motion.enabled */
+    private static final boolean MOTION_GATE = PipelineConfig.getBoolean("motion.enabled", true);
+
+    /** The mean difference in gray levels that counts as a change, set with motion.threshold */
+    private static final double MOTION_THRESHOLD = PipelineConfig.getDouble("motion.threshold", 3.0);
+
+    /** The longest time in milliseconds the last prediction is reused, set with motion.refreshMs */
+    private static final long MOTION_REFRESH = PipelineConfig.getInt("motion.refreshMs", 1000);
 
-    /** The confidence score of the model */
-    private float predictedScore;
+    /** Whether to prepare the next frame while the model runs on the current one, set with pipeline.enabled */
+    private static final boolean PIPELINED = PipelineConfig.getBoolean("pipeline.enabled", true);
+
+    /** The number of input buffers of the pipeline, set with pipeline.depth */
+    private static final int PIPELINE_DEPTH = Math.max(1, PipelineConfig.getInt("pipeline.depth", 2));
 
     /** Whether or not the camera capture is running */
     private static volatile boolean running = true;
 
+    /** Where the frames come from, the system default camera unless configured otherwise */
+    private final FrameSource source;
+
+    /** Whether the frame source was opened by openCamera() */
+    private boolean opened;
+
+    /** Hands the latest captured frame from the capture thread to the inference thread */
+    private LatestFrameBuffer frameBuffer;
+
+    /** Whether the first prediction has been published */
+    private boolean firstPrediction;
+
+    /** The latest frame converted to BGRA on the capture thread, copied into previewBuffer on the JavaFX thread */
+    private Mat previewFrame;
+
+    /** Direct buffer holding the BGRA pixels shown in the camera preview, only written on the JavaFX thread */
+    private ByteBuffer previewBuffer;
+
+    /** Mat that wraps previewBuffer so OpenCV writes the preview pixels in place */
+    private Mat previewMat;
+
+    /** PixelBuffer over previewBuffer that backs previewImage */
+    private PixelBuffer<ByteBuffer> previewPixels;
+
+    /** The image displayed in the camera preview, reused for every frame */
+    private WritableImage previewImage;
+
+    /** Whether a preview update is waiting to be applied on the JavaFX thread */
+    private final AtomicBoolean previewPending = new AtomicBoolean(false);
+
     /**
      * Constructor for CameraController class.
-     * Loads OpenCV locally and initializes predictedClass and predictedScore to null and 0 respectively.
+     * Reads frames from the source set with the source setting, which is
+     * the system default camera unless configured otherwise.
      */
     public CameraController() {
+        this(FrameSource.fromConfig());
+    }
+
+    /**
+     * Constructor for CameraController class that reads frames from the given source.
+     * There is no prediction until the model has seen the first frame.
+     * OpenCV and the source are loaded later by openCamera() so the
+     * controller can be created on the JavaFX thread without blocking it.
+     *
+     * @param source where the frames come from
+     */
+    public CameraController(FrameSource source) {
+        this.source = source;
+
+        // There is no prediction at start
+        latestPrediction = null;
+    }
+
+    /**
+     * Loads OpenCV locally and opens the frame source, the system default
+     * camera unless configured otherwise.
+     * This can take a few seconds, so it should be called off the JavaFX thread.
+     *
+     * @return true if the frame source was opened, false otherwise
+     */
+    public boolean openCamera() {
+        long start = System.nanoTime();
+
         // Load the OpenCV library locally
         nu.pattern.OpenCV.loadLocally();
 
-        // Set predictedClass to null at start
-        predictedClass = null;
+        // Create the frame handoff after OpenCV is loaded since it allocates Mats
+        frameBuffer = new LatestFrameBuffer();
+
+        // Open the frame source, by default the system default camera (0)
+        opened = source.open();
 
-        // Set predictedScore to 0 at start
-        predictedScore = 0;
+        System.out.println("Opened " + source + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return opened;
     }
 
     /**
-     * Captures camera frames and displays them in an ImageView while running.
+     * Captures frames and displays them in an ImageView while running.
+     * The camera must have been opened with openCamera() first. Frames are handed to a separate inference thread through a
+     * LatestFrameBuffer, so a slow prediction never stalls the preview and
+     * the model always works on the freshest frame. Each prediction is
+     * pushed to the registered PredictionListeners as soon as it is made.
      * 
-     * @param imageView the ImageView to display the captured frames
+     * @param imageView the ImageView to display the captured frames, or null to run without a preview
      * @param model the ModelManager to use for predicting the class and score of the captured frames
      */
     public void captureCamera(ImageView imageView, ModelManager model) {
         // Create a new thread to run the camera capture to prevent the camera from
         // from blocking the main thread and causing the app to become unresponsive
-        new Thread(() -> {
-            // Create a VideoCapture with the system default camera (0)
-            VideoCapture camera = new VideoCapture(0);
-
-            if (!camera.isOpened()) {
+        Thread captureThread = new Thread(() -> {
+            if (!opened) {
                 System.out.println("Error! Camera can't be opened.");
+                frameBuffer.close();
                 return;
             }
 
             // Create a new frame to host the image from the camera
             Mat frame = new Mat();
+            boolean firstFrame = false;
+            PipelineMetrics metrics = PipelineMetrics.get();
 
             while (running) {
+                FrameCaptureEvent captureEvent = new FrameCaptureEvent();
+                captureEvent.begin();
+                long start = System.nanoTime();
+
                 // Capture the frame
-                if (camera.read(frame)) {
-                    // Convert and display the image from the camera
-                    Image img = matToImage(frame);
+                if (source.read(frame)) {
+                    captureEvent.end();
+                    metrics.capture().recordSince(start);
+                    metrics.frameCaptured();
 
-                    // Update the image displayed in the image view
-                    Platform.runLater(() -> imageView.setImage(img));
+                    if (!firstFrame) {
+                        firstFrame = true;
+                        logSinceLaunch("First frame");
+                    }
 
-                    // Get the predicted result from the model
-                    Prediction result = model.getPrediction(frame);
+                    // Convert and display the image from the camera
+                    if (imageView != null) {
+                        long previewStart = System.nanoTime();
+                        updatePreview(frame, imageView);
+                        metrics.preview().recordSince(previewStart);
+                    }
 
-                    // Get the predicted class from the result
-                    predictedClass = result.getClassName();
+                    // Hand the frame to the inference thread, replacing any unconsumed frame
+                    long sequence = frameBuffer.publish(frame);
 
-                    // Get the predicted score from the result
-                    predictedScore = result.getConfidence();
+                    if (captureEvent.shouldCommit()) {
+                        captureEvent.sequence = sequence;
+                        captureEvent.commit();
+                    }
                 }
                 else {
                     System.out.println("Cannot capture the frame.");
@@ -82,9 +185,72 @@ public class CameraController {
                 }
             }
 
-            // Release the camera after usage
-            camera.release();
-        }).start();
+            // Wake up the inference thread so it can exit
+            frameBuffer.close();
+
+            // Release the frame source and the frame after usage
+            source.close();
+            frame.release();
+        }, "camera-capture");
+
+        // Create a new thread to run the model on the latest captured frame
+        // When pipelined, this thread only prepares frames and the pipeline runs the model on its own thread
+        Thread inferenceThread = new Thread(() -> {
+            MotionDetector motion = MOTION_GATE ? new MotionDetector(MOTION_THRESHOLD, MOTION_REFRESH) : null;
+            PipelinedPredictor pipeline = PIPELINED && model.getModelProcessor().getSignature() != null
+                    ? new PipelinedPredictor(model, PIPELINE_DEPTH, this::publish)
+                    : null;
+
+            try {
+                Mat frame;
+                PipelineMetrics metrics = PipelineMetrics.get();
+
+                while (running && (frame = frameBuffer.take()) != null) {
+                    long sequence = frameBuffer.getTakenSequence();
+
+                    // A frame that cannot be predicted is skipped so the thread keeps going
+                    try {
+                        if (motion != null && latestPrediction != null && !motion.hasChanged(frame)) {
+                            // The scene has not changed, so the last prediction still holds
+                            metrics.inferenceSkipped();
+
+                            if (pipeline != null) {
+                                pipeline.submitRepeat(sequence);
+                            }
+                            else {
+                                publish(latestPrediction.withSequence(sequence));
+                            }
+                        }
+                        else if (pipeline != null) {
+                            // Prepare the frame while the model still runs on the previous one
+                            pipeline.submit(frame, sequence);
+                        }
+                        else {
+                            // Get the predicted result from the model
+                            publish(model.getPrediction(frame, sequence));
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to predict frame " + sequence);
+                        e.printStackTrace();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+                if (motion != null) {
+                    motion.release();
+                }
+            }
+        }, "model-inference");
+
+        captureThread.setDaemon(true);
+        inferenceThread.setDaemon(true);
+
+        captureThread.start();
+        inferenceThread.start();
     }
 
     /**
@@ -93,7 +259,8 @@ public class CameraController {
      * @return the predicted class from the model
      */
     public String getPredictedClass() {
-        return predictedClass;
+        Prediction prediction = latestPrediction;
+        return prediction == null ? null : prediction.getClassName();
     }
 
     /**
@@ -102,7 +269,48 @@ public class CameraController {
      * @return the predicted confidence score from the model
      */
     public float getPredictedScore() {
-        return predictedScore;
+        Prediction prediction = latestPrediction;
+        return prediction == null ? 0 : prediction.getConfidence();
+    }
+
+    /**
+     * Returns the latest prediction from the model, with its class,
+     * confidence, frame sequence number and timestamp read together.
+     *
+     * @return the latest prediction, or null if there is none yet
+     */
+    public Prediction getLatestPrediction() {
+        return latestPrediction;
+    }
+
+    /**
+     * Registers a listener to be called on the inference thread each time
+     * the model makes a prediction. Listeners that update the UI should be
+     * wrapped in an FxPredictionDispatcher.
+     *
+     * @param listener the listener to add
+     */
+    public void addPredictionListener(PredictionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with addPredictionListener().
+     *
+     * @param listener the listener to remove
+     */
+    public void removePredictionListener(PredictionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of captured frames that were replaced by a newer
+     * frame before the model could process them.
+     *
+     * @return the number of frames dropped between capture and inference
+     */
+    public long getDroppedFrames() {
+        return frameBuffer == null ? 0 : frameBuffer.getDroppedFrames();
     }
 
     /**
@@ -113,19 +321,109 @@ public class CameraController {
     }
 
     /**
-     * Converts a given OpenCV Mat object to a JavaFX Image object.
-     * 
-     * @param frame The OpenCV Mat object to be converted.
-     * @return The JavaFX Image object created from the image encoded in the buffer.
+     * Publishes a prediction as one snapshot and notifies the listeners.
+     * Called on whichever thread made the prediction, one prediction at a time.
+     *
+     * @param result the new prediction
+     */
+    private void publish(Prediction result) {
+        if (!firstPrediction) {
+            firstPrediction = true;
+            logSinceLaunch("First prediction");
+        }
+
+        latestPrediction = result;
+        for (PredictionListener listener : listeners) {
+            listener.onPrediction(result);
+        }
+    }
+
+    /**
+     * Prints how long after the JVM was launched the given event happened,
+     * so startup regressions show up in the console log.
+     *
+     * @param event the name of the event
+     */
+    private void logSinceLaunch(String event) {
+        long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println(event + " " + elapsed + " ms after launch");
+    }
+
+    /**
+     * Converts the given frame for the preview and schedules the ImageView
+     * to show it. If the JavaFX thread has not copied the previous frame
+     * yet, this frame is skipped for the preview so previewFrame is never
+     * rewritten while it is being copied.
+     *
+     * @param frame the OpenCV Mat captured from the camera
+     * @param imageView the ImageView displaying the camera preview
+     */
+    private void updatePreview(Mat frame, ImageView imageView) {
+        if (!previewPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        convertPreview(frame);
+
+        Platform.runLater(() -> {
+            Image img = showPreview();
+            if (imageView.getImage() != img) {
+                imageView.setImage(img);
+            }
+            previewPending.set(false);
+        });
+    }
+
+    /**
+     * Converts a captured frame to the BGRA pixels of the preview. This runs
+     * on the capture thread and only writes previewFrame, never the buffer
+     * backing the displayed image, which JavaFX may be reading.
+     *
+     * @param frame the OpenCV Mat captured from the camera
+     * @return the converted frame
+     */
+    Mat convertPreview(Mat frame) {
+        // Created on first use since the controller is built before OpenCV is loaded
+        if (previewFrame == null) {
+            previewFrame = new Mat();
+        }
+
+        // The alpha channel is always opaque, so the pixels are valid premultiplied BGRA
+        Imgproc.cvtColor(frame, previewFrame, Imgproc.COLOR_BGR2BGRA);
+        return previewFrame;
+    }
+
+    /**
+     * Copies the converted frame into the buffer backing the preview image.
+     * The BGRA pixels go straight into a direct buffer behind a reusable
+     * WritableImage, so no image codec is involved and no new Image is
+     * created unless the frame size changes. Must be called on the JavaFX
+     * thread, since PixelBuffer only allows writes inside updateBuffer().
+     *
+     * @return the JavaFX Image backed by the preview pixel buffer
      */
-    private Image matToImage(Mat frame) {
-        // Create a temporary buffer to store the encoded image data
-        MatOfByte buffer = new MatOfByte();
+    private Image showPreview() {
+        int width = previewFrame.cols();
+        int height = previewFrame.rows();
+
+        // (Re)create the preview buffer only when the frame size changes
+        if (previewImage == null || previewImage.getWidth() != width || previewImage.getHeight() != height) {
+            if (previewMat != null) {
+                previewMat.release();
+            }
+
+            previewBuffer = ByteBuffer.allocateDirect(width * height * 4);
+            previewMat = new Mat(height, width, CvType.CV_8UC4, previewBuffer);
+            previewPixels = new PixelBuffer<>(width, height, previewBuffer, PixelFormat.getByteBgraPreInstance());
+            previewImage = new WritableImage(previewPixels);
+        }
 
-        // Encode the frame in the buffer, according to the PNG format
-        Imgcodecs.imencode(".png", frame, buffer);
+        // Write the pixels inside the callback so the render thread never uploads a half-written frame
+        previewPixels.updateBuffer(pixels -> {
+            previewFrame.copyTo(previewMat);
+            return null;
+        });
 
-        // Build and return an Image created from the image encoded in the buffer
-        return new Image(new ByteArrayInputStream(buffer.toArray()));
+        return previewImage;
     }
 }
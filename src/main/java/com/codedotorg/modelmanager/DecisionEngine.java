@@ -0,0 +1,268 @@
+package com.codedotorg.modelmanager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.codedotorg.metrics.PipelineMetrics;
+
+public class DecisionEngine implements PredictionListener {
+
+    /** How the recent frames are combined, "ema" (default) or "vote" */
+    private static final boolean VOTE = "vote".equalsIgnoreCase(PipelineConfig.getString("decision.mode", "ema"));
+
+    /** The number of recent frames kept for the majority vote */
+    private static final int WINDOW = Math.max(1, PipelineConfig.getInt("decision.window", 5));
+
+    /** The weight of the newest frame in the moving average */
+    private static final float SMOOTHING = (float) PipelineConfig.getDouble("decision.smoothing", 0.5);
+
+    /** The smoothed confidence a class needs to count as a candidate */
+    private static final float THRESHOLD = (float) PipelineConfig.getDouble("decision.threshold", 0.8);
+
+    /** The number of consecutive frames a class has to stay the candidate to be decided */
+    private static final int STABLE_FRAMES = Math.max(1, PipelineConfig.getInt("decision.frames", 3));
+
+    /** The label of the class that means no gesture is shown */
+    private static final String NEUTRAL_LABEL = PipelineConfig.getString("decision.neutral", "neutral");
+
+    /** The labels of the model, in class index order */
+    private final List<String> labels;
+
+    /** The number of classes of the model */
+    private final int numClasses;
+
+    /** The index of the neutral class, or -1 if the model has none */
+    private final int neutralIndex;
+
+    /** The listener called with each decision */
+    private final PredictionListener target;
+
+    /** Whether the recent frames are combined by majority vote instead of a moving average */
+    private final boolean vote;
+
+    /** The weight of the newest frame in the moving average */
+    private final float smoothing;
+
+    /** The combined score a class needs to count as a candidate */
+    private final float threshold;
+
+    /** The number of consecutive frames a class has to stay the candidate to be decided */
+    private final int stableFrames;
+
+    /** The most likely class of each of the last window frames, for the majority vote */
+    private final int[] votes;
+
+    /** The combined scores of the recent frames, the moving average of the probabilities or the share of votes */
+    private final float[] scores;
+
+    /** The slot of votes the next frame is written to */
+    private int head;
+
+    /** The number of recent frames counted, at most the size of the window */
+    private int frames;
+
+    /** The class currently staying above the threshold, or -1 if there is none */
+    private int candidate;
+
+    /** The number of consecutive frames the candidate has stayed above the threshold */
+    private int streak;
+
+    /** The System.nanoTime() of the frame on which the candidate first appeared */
+    private long candidateSince;
+
+    /**
+     * Constructs a DecisionEngine for a model with the given labels.
+     * The engine receives every prediction and only calls the target once
+     * one gesture has stayed confident for several frames in a row, so a
+     * single misclassified frame never decides a round. The settings are
+     * read from the decision.* configuration.
+     *
+     * @param labels the labels of the model, in class index order
+     * @param target the listener to call with each decision
+     */
+    public DecisionEngine(List<String> labels, PredictionListener target) {
+        this(labels, target, VOTE, WINDOW, SMOOTHING, THRESHOLD, STABLE_FRAMES);
+    }
+
+    /**
+     * Constructs a DecisionEngine with the given settings.
+     *
+     * @param labels the labels of the model, in class index order
+     * @param target the listener to call with each decision
+     * @param vote true to combine frames by majority vote, false for a moving average of the probabilities
+     * @param window the number of recent frames in the majority vote
+     * @param smoothing the weight of the newest frame in the moving average
+     * @param threshold the averaged probability, or the share of votes, a class needs to count as a candidate
+     * @param stableFrames the number of consecutive frames a class has to stay the candidate to be decided
+     */
+    public DecisionEngine(List<String> labels, PredictionListener target, boolean vote, int window,
+            float smoothing, float threshold, int stableFrames) {
+        this.labels = labels;
+        this.target = target;
+        this.vote = vote;
+        this.smoothing = smoothing;
+        this.threshold = threshold;
+        this.stableFrames = Math.max(1, stableFrames);
+        numClasses = labels.size();
+        neutralIndex = findNeutralIndex(labels);
+
+        votes = new int[Math.max(1, window)];
+        scores = new float[numClasses];
+        reset();
+    }
+
+    /**
+     * Adds a prediction to the recent frames and calls the target if a
+     * gesture has been decided. Called on the inference thread.
+     *
+     * @param prediction the prediction for the newest frame
+     */
+    public void onPrediction(Prediction prediction) {
+        Prediction decision = offer(prediction);
+
+        if (decision != null) {
+            target.onPrediction(decision);
+        }
+    }
+
+    /**
+     * Adds a prediction to the recent frames and returns a decision once
+     * one class other than the neutral one has stayed above the threshold
+     * for the configured number of consecutive frames. The engine starts
+     * over after each decision.
+     *
+     * @param prediction the prediction for the newest frame
+     * @return the decided gesture, or null if no gesture is stable yet
+     */
+    public synchronized Prediction offer(Prediction prediction) {
+        // Combine the new frame with the recent ones
+        addFrame(prediction);
+
+        // Find the most likely class, ignoring the neutral one
+        int best = -1;
+        for (int i = 0; i < numClasses; i++) {
+            if (i != neutralIndex && (best < 0 || scores[i] > scores[best])) {
+                best = i;
+            }
+        }
+
+        if (best < 0 || scores[best] < threshold) {
+            candidate = -1;
+            streak = 0;
+            return null;
+        }
+
+        if (best != candidate) {
+            candidate = best;
+            streak = 0;
+            candidateSince = prediction.getTimestamp();
+        }
+        streak++;
+
+        if (streak < stableFrames) {
+            return null;
+        }
+
+        // Record how long the gesture took to be decided from when it first appeared
+        PipelineMetrics.get().decision().recordSince(candidateSince);
+
+        Prediction decision = new Prediction(labels.get(best), best, scores[best], prediction.getSequence());
+        reset();
+        return decision;
+    }
+
+    /**
+     * Forgets all recent frames, for example when a new round starts.
+     */
+    public synchronized void reset() {
+        head = 0;
+        frames = 0;
+        candidate = -1;
+        streak = 0;
+        Arrays.fill(scores, 0);
+    }
+
+    /**
+     * Adds a prediction to the recent frames and updates the combined
+     * scores, either the moving average of the probabilities or the share
+     * of the recent frames whose most likely class each class was.
+     *
+     * @param prediction the prediction for the newest frame
+     */
+    private void addFrame(Prediction prediction) {
+        frames = Math.min(frames + 1, votes.length);
+
+        if (vote) {
+            // Each frame votes for its most likely class, including the neutral one
+            votes[head] = mostLikely(prediction);
+            head = (head + 1) % votes.length;
+
+            Arrays.fill(scores, 0);
+            for (int frame = 0; frame < frames; frame++) {
+                if (votes[frame] >= 0 && votes[frame] < numClasses) {
+                    scores[votes[frame]] += 1f / frames;
+                }
+            }
+        }
+        else {
+            // The first frame starts the average, later frames are blended in
+            float weight = frames == 1 ? 1 : smoothing;
+            for (int i = 0; i < numClasses; i++) {
+                scores[i] += weight * (probability(prediction, i) - scores[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the most likely class of a prediction.
+     *
+     * @param prediction the prediction to read
+     * @return the index of the most likely class, or -1 if it is unknown
+     */
+    private int mostLikely(Prediction prediction) {
+        if (prediction.getNumClasses() == 0) {
+            return prediction.getClassIndex();
+        }
+
+        int best = 0;
+        for (int i = 1; i < numClasses; i++) {
+            if (probability(prediction, i) > probability(prediction, best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the probability of a class in the given prediction. Predictions
+     * made without their probabilities count fully for their own class.
+     *
+     * @param prediction the prediction to read
+     * @param classIndex the index of the class
+     * @return the probability of the class
+     */
+    private static float probability(Prediction prediction, int classIndex) {
+        if (classIndex < prediction.getNumClasses()) {
+            return prediction.getProbability(classIndex);
+        }
+        return classIndex == prediction.getClassIndex() ? prediction.getConfidence() : 0;
+    }
+
+    /**
+     * Returns the index of the label that matches the neutral class.
+     * Labels are compared without their leading number, e.g. "3 neutral".
+     *
+     * @param labels the labels of the model
+     * @return the index of the neutral class, or -1 if there is none
+     */
+    private static int findNeutralIndex(List<String> labels) {
+        for (int i = 0; i < labels.size(); i++) {
+            String label = labels.get(i);
+            String name = label.substring(label.indexOf(" ") + 1);
+            if (name.equalsIgnoreCase(NEUTRAL_LABEL)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
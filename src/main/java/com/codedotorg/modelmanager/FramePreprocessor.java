@@ -0,0 +1,254 @@
+package com.codedotorg.modelmanager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class FramePreprocessor {
+
+    /** The input size used when the model does not declare one */
+    private static final int DEFAULT_SIZE = 224;
+
+    /** The number of channels used when the model does not declare one */
+    private static final int DEFAULT_CHANNELS = 3;
+
+    /** Whether to normalize in OpenCV (default) or in Java when preprocess=java */
+    private static final boolean NATIVE_NORMALIZE = !"java".equalsIgnoreCase(PipelineConfig.getString("preprocess", "native"));
+
+    /** The width of the model input */
+    private final int width;
+
+    /** The height of the model input */
+    private final int height;
+
+    /** The number of channels of the model input */
+    private final int channels;
+
+    /** The number of frames the input buffer can hold */
+    private final int capacity;
+
+    /** The size the frames are resized to */
+    private final Size inputSize;
+
+    /** The shape of the input tensor for a single frame, [1, height, width, channels] */
+    private final long[] tensorShape;
+
+    /** The resized frame, reused for every frame */
+    private Mat resized;
+
+    /** The resized frame converted from BGR to RGB, reused for every frame */
+    private Mat rgb;
+
+    /** Float Mats that wrap each slot of inputBytes so OpenCV writes the normalized pixels in place */
+    private Mat[] inputMats;
+
+    /** The pixels of the resized frame, reused for every frame */
+    private final byte[] pixels;
+
+    /** The direct buffer holding the normalized model input as native-order floats */
+    private final ByteBuffer inputBytes;
+
+    /** The part of inputBytes holding each frame of a batch */
+    private final ByteBuffer[] slotBytes;
+
+    /** The float view of inputBytes passed to the input tensor */
+    private final FloatBuffer input;
+
+    /** Converts the pixels to normalized floats, using SIMD when available */
+    private final PixelNormalizer normalizer;
+
+    /** Whether OpenCV normalizes the pixels instead of the normalizer */
+    private final boolean nativeNormalize;
+
+    /**
+     * Constructs a FramePreprocessor for a single frame sized from the model's input shape.
+     *
+     * @param inputShape the input shape of the model, [batch, height, width, channels]
+     */
+    public FramePreprocessor(long[] inputShape) {
+        this(inputShape, 1);
+    }
+
+    /**
+     * Constructs a FramePreprocessor that can hold a batch of frames, sized
+     * from the model's input shape. Unknown dimensions fall back to a 224x224
+     * image with 3 channels. All buffers are allocated once here so
+     * preprocessing a frame does not allocate anything on the heap.
+     *
+     * @param inputShape the input shape of the model, [batch, height, width, channels]
+     * @param capacity the number of frames the input buffer can hold
+     */
+    public FramePreprocessor(long[] inputShape, int capacity) {
+        this(inputShape, capacity, NATIVE_NORMALIZE);
+    }
+
+    /**
+     * Constructs a FramePreprocessor that normalizes in OpenCV or in Java
+     * whatever the preprocess setting is, so the two can be compared.
+     *
+     * @param inputShape the input shape of the model, [batch, height, width, channels]
+     * @param capacity the number of frames the input buffer can hold
+     * @param nativeNormalize true to normalize in OpenCV, false to use the PixelNormalizer
+     */
+    FramePreprocessor(long[] inputShape, int capacity, boolean nativeNormalize) {
+        this.nativeNormalize = nativeNormalize;
+        height = dimension(inputShape, 1, DEFAULT_SIZE);
+        width = dimension(inputShape, 2, DEFAULT_SIZE);
+        channels = dimension(inputShape, 3, DEFAULT_CHANNELS);
+        this.capacity = capacity;
+
+        inputSize = new Size(width, height);
+        tensorShape = new long[] {1, height, width, channels};
+
+        pixels = new byte[width * height * channels];
+        int frameBytes = pixels.length * Float.BYTES;
+
+        inputBytes = ByteBuffer.allocateDirect(frameBytes * capacity).order(ByteOrder.nativeOrder());
+        input = inputBytes.asFloatBuffer();
+
+        slotBytes = new ByteBuffer[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            slotBytes[slot] = inputBytes.slice(slot * frameBytes, frameBytes).order(ByteOrder.nativeOrder());
+        }
+
+        normalizer = PixelNormalizer.getInstance();
+    }
+
+    /**
+     * Resizes, converts from BGR to RGB and normalizes the given frame into
+     * the reusable input buffer. By default all three steps run in OpenCV and
+     * the result is written straight into the buffer backing the input tensor,
+     * so the pixels never pass through Java arrays.
+     * The returned buffer is overwritten by the next call to prepare().
+     *
+     * @param frame the BGR frame captured from the camera
+     * @return the input buffer holding the normalized pixels, positioned at 0
+     */
+    public FloatBuffer prepare(Mat frame) {
+        prepare(frame, 0);
+        return getBuffer(1);
+    }
+
+    /**
+     * Resizes, converts and normalizes the given frame into one slot of
+     * the input buffer, so several frames can be fed to the model at once.
+     *
+     * @param frame the BGR frame captured from the camera
+     * @param slot the position of the frame in the batch
+     */
+    public void prepare(Mat frame, int slot) {
+        // The Mats are created on first use so the preprocessor can be built before OpenCV is loaded
+        if (resized == null) {
+            resized = new Mat();
+            rgb = new Mat();
+            inputMats = new Mat[capacity];
+        }
+
+        if (inputMats[slot] == null) {
+            inputMats[slot] = new Mat(height, width, CvType.CV_32FC(channels), slotBytes[slot]);
+        }
+
+        Imgproc.resize(frame, resized, inputSize);
+
+        // OpenCV captures BGR but Teachable Machine models are trained on RGB
+        Imgproc.cvtColor(resized, rgb, Imgproc.COLOR_BGR2RGB);
+
+        if (nativeNormalize) {
+            // pixel * (1 / 127.5) - 1 maps [0,255] to [-1,1]
+            rgb.convertTo(inputMats[slot], inputMats[slot].type(), 1 / 127.5, -1);
+        }
+        else {
+            rgb.get(0, 0, pixels);
+            normalizer.normalize(pixels, pixels.length, slotBytes[slot]);
+        }
+    }
+
+    /**
+     * Returns the input buffer limited to the first count frames.
+     *
+     * @param count the number of prepared frames
+     * @return the input buffer, positioned at 0
+     */
+    public FloatBuffer getBuffer(int count) {
+        input.limit(count * pixels.length);
+        input.rewind();
+        return input;
+    }
+
+    /**
+     * Returns the shape of the input tensor built from a single prepared frame.
+     *
+     * @return the tensor shape, [1, height, width, channels]
+     */
+    public long[] getTensorShape() {
+        return tensorShape;
+    }
+
+    /**
+     * Returns the shape of the input tensor built from a batch of prepared frames.
+     *
+     * @param count the number of frames in the batch
+     * @return the tensor shape, [count, height, width, channels]
+     */
+    public long[] getTensorShape(int count) {
+        return new long[] {count, height, width, channels};
+    }
+
+    /**
+     * Returns the number of floats in one prepared frame.
+     *
+     * @return the number of floats in the input buffer
+     */
+    public int getFrameSize() {
+        return pixels.length;
+    }
+
+    /**
+     * Returns the number of frames the input buffer can hold.
+     *
+     * @return the batch capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Releases the native memory held by the reusable Mats.
+     * The input buffer itself is freed when the preprocessor is garbage collected.
+     */
+    public void release() {
+        if (resized != null) {
+            resized.release();
+            rgb.release();
+            for (Mat inputMat : inputMats) {
+                if (inputMat != null) {
+                    inputMat.release();
+                }
+            }
+            resized = null;
+            rgb = null;
+            inputMats = null;
+        }
+    }
+
+    /**
+     * Returns the size of a dimension of the given shape, or the default
+     * if the shape does not have that dimension or its size is unknown.
+     *
+     * @param shape the shape to read
+     * @param index the index of the dimension
+     * @param defaultSize the size to use if the dimension is unknown
+     * @return the size of the dimension
+     */
+    private static int dimension(long[] shape, int index, int defaultSize) {
+        if (shape == null || shape.length <= index || shape[index] <= 0) {
+            return defaultSize;
+        }
+        return (int) shape[index];
+    }
+}
@@ -0,0 +1,53 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.codedotorg.metrics.PipelineMetrics;
+
+import javafx.application.Platform;
+
+public class FxPredictionDispatcher implements PredictionListener {
+
+    /** The listener called on the JavaFX thread */
+    private final PredictionListener target;
+
+    /** The newest prediction not yet delivered to the JavaFX thread */
+    private final AtomicReference<Prediction> latest = new AtomicReference<>();
+
+    /**
+     * Constructs an FxPredictionDispatcher that delivers predictions to the
+     * given listener on the JavaFX thread.
+     *
+     * @param target the listener to call on the JavaFX thread
+     */
+    public FxPredictionDispatcher(PredictionListener target) {
+        this.target = target;
+    }
+
+    /**
+     * Hands the prediction to the JavaFX thread. If an earlier prediction is
+     * still waiting there, it is replaced instead of scheduling another
+     * update, so the UI only ever sees the newest prediction and the
+     * JavaFX event queue never fills up with stale ones.
+     *
+     * @param prediction the new prediction
+     */
+    public void onPrediction(Prediction prediction) {
+        if (latest.getAndSet(prediction) == null) {
+            Platform.runLater(this::deliver);
+        }
+    }
+
+    /**
+     * Delivers the newest waiting prediction on the JavaFX thread and records
+     * how long it took to get there since the model made it.
+     */
+    private void deliver() {
+        Prediction prediction = latest.getAndSet(null);
+
+        if (prediction != null) {
+            PipelineMetrics.get().uiHandoff().recordSince(prediction.getTimestamp());
+            target.onPrediction(prediction);
+        }
+    }
+}
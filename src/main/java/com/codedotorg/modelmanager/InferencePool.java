@@ -0,0 +1,236 @@
+package com.codedotorg.modelmanager;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.Mat;
+
+public class InferencePool implements StreamPredictor {
+
+    /** The loaded model shared by all workers */
+    private final ModelManager model;
+
+    /** The work-stealing pool running the predictions */
+    private final ForkJoinPool workers;
+
+    /** All preprocessors, one per worker, so they can be released when the pool is closed */
+    private final FramePreprocessor[] preprocessors;
+
+    /** The preprocessors not in use, each task takes one so workers never share an input buffer */
+    private final BlockingQueue<FramePreprocessor> freeBuffers;
+
+    /** The streams fed into the pool, indexed by stream id */
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+
+    /** The streams with a frame waiting, in the order they take their turn */
+    private final Queue<Stream> ready = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs an InferencePool with the given number of worker threads.
+     * All workers share the model's Session, which TensorFlow allows to run
+     * from several threads at once, and each task prepares its frame into
+     * one of workerCount input buffers. The buffers belong to the pool rather
+     * than to the worker threads, which the pool retires and recreates.
+     * Idle workers steal queued predictions from busy ones, while the
+     * streams take turns in the order their frames arrived.
+     *
+     * @param model the loaded model
+     * @param workerCount the number of worker threads, usually at most the number of cores
+     */
+    public InferencePool(ModelManager model, int workerCount) {
+        this.model = model;
+
+        long[] inputShape = model.getModelProcessor().getSignature().getInputShape();
+        preprocessors = new FramePreprocessor[workerCount];
+        freeBuffers = new ArrayBlockingQueue<>(workerCount);
+
+        for (int i = 0; i < workerCount; i++) {
+            preprocessors[i] = new FramePreprocessor(inputShape);
+            freeBuffers.add(preprocessors[i]);
+        }
+
+        workers = new ForkJoinPool(workerCount, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("inference-worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+
+    /**
+     * Adds a stream of frames, for example one camera. Its predictions are
+     * passed to the listener on a worker thread, one at a time and in frame order.
+     *
+     * @param listener called with each prediction made for the stream
+     * @return the id of the stream, used with submit()
+     */
+    public synchronized int addStream(PredictionListener listener) {
+        streams.add(new Stream(listener));
+        return streams.size() - 1;
+    }
+
+    /**
+     * Hands a frame of a stream to the pool. The frame is copied, so the
+     * caller can reuse it right away. Each stream has at most one frame
+     * being predicted and one waiting; a newer frame replaces the waiting
+     * one, so a fast camera never takes workers away from the other streams.
+     *
+     * @param streamId the id returned by addStream()
+     * @param frame the BGR frame
+     * @return the sequence number given to the frame within its stream
+     */
+    public long submit(int streamId, Mat frame) {
+        Stream stream = streams.get(streamId);
+        long sequence = stream.frames.publish(frame);
+
+        // Queue the stream unless it is already queued or being predicted
+        schedule(stream);
+        return sequence;
+    }
+
+    /**
+     * Returns the number of frames of a stream that were replaced by a newer
+     * frame before a worker could predict them.
+     *
+     * @param streamId the id returned by addStream()
+     * @return the number of dropped frames of the stream
+     */
+    public long getDroppedFrames(int streamId) {
+        return streams.get(streamId).frames.getDroppedFrames();
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return workers.getParallelism();
+    }
+
+    /**
+     * Stops the workers, waiting briefly for the predictions in progress,
+     * and releases the input buffers and the frame buffers of the streams.
+     * Buffers still in use by a worker that did not stop in time are left
+     * alone. submit() must not be called afterwards.
+     */
+    public void close() {
+        workers.shutdown();
+
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Inference workers did not stop, leaving their buffers allocated");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (FramePreprocessor preprocessor : preprocessors) {
+            preprocessor.release();
+        }
+        for (Stream stream : streams) {
+            stream.frames.release();
+        }
+    }
+
+    /**
+     * Puts a stream at the back of the line and gives the workers one more
+     * task, unless the stream is already in line or being predicted.
+     *
+     * @param stream the stream with a frame waiting
+     */
+    private void schedule(Stream stream) {
+        if (stream.scheduled.compareAndSet(false, true)) {
+            ready.add(stream);
+            workers.execute(this::runNext);
+        }
+    }
+
+    /**
+     * Predicts the waiting frame of the stream at the front of the line.
+     * Tasks do not carry a stream themselves, so whichever worker runs or
+     * steals a task always serves the stream that has waited the longest.
+     * If another frame arrived meanwhile, the stream goes to the back of
+     * the line instead of keeping the worker.
+     */
+    private void runNext() {
+        Stream stream = ready.poll();
+        if (stream == null) {
+            return;
+        }
+
+        try {
+            Mat frame = stream.frames.poll();
+
+            if (frame != null) {
+                long sequence = stream.frames.getTakenSequence();
+                stream.listener.onPrediction(predict(frame, sequence));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to predict a frame");
+            e.printStackTrace();
+        } finally {
+            stream.scheduled.set(false);
+        }
+
+        // A frame published while predicting would otherwise wait for the next submit()
+        if (stream.frames.hasPending()) {
+            schedule(stream);
+        }
+    }
+
+    /**
+     * Predicts a frame with a preprocessor borrowed from the pool.
+     * There are as many preprocessors as workers, so one is normally free.
+     *
+     * @param frame the frame to predict
+     * @param sequence the sequence number of the frame
+     * @return the prediction for the frame
+     * @throws InterruptedException if the worker is interrupted while waiting for a preprocessor
+     */
+    private Prediction predict(Mat frame, long sequence) throws InterruptedException {
+        FramePreprocessor preprocessor = freeBuffers.take();
+
+        try {
+            return model.getPrediction(frame, sequence, preprocessor);
+        } finally {
+            freeBuffers.put(preprocessor);
+        }
+    }
+
+    /**
+     * The frames and listener of one stream.
+     */
+    private static class Stream {
+
+        /** Holds the latest frame of the stream that has not been predicted yet */
+        private final LatestFrameBuffer frames = new LatestFrameBuffer();
+
+        /** Called with each prediction made for the stream */
+        private final PredictionListener listener;
+
+        /** Whether the stream is in line or being predicted */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * Constructs a Stream.
+         *
+         * @param listener called with each prediction made for the stream
+         */
+        private Stream(PredictionListener listener) {
+            this.listener = listener;
+        }
+    }
+}
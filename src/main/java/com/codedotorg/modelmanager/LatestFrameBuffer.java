@@ -0,0 +1,162 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+
+import com.codedotorg.metrics.PipelineMetrics;
+
+public class LatestFrameBuffer {
+
+    /** The Mat the producer copies the next frame into */
+    private Mat back;
+
+    /** The most recently published frame that has not been taken yet */
+    private Mat pending;
+
+    /** The Mat handed to the consumer by the last call to take() */
+    private Mat front;
+
+    /** The sequence number of the frame in pending */
+    private long pendingSequence;
+
+    /** The sequence number of the frame in front */
+    private long frontSequence;
+
+    /** The sequence number given to the next published frame */
+    private long nextSequence;
+
+    /** Whether pending holds a frame that has not been taken yet */
+    private boolean hasPending;
+
+    /** Whether the buffer has been closed */
+    private boolean closed;
+
+    /** The number of frames that were replaced before they were consumed */
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    /**
+     * Constructs a new LatestFrameBuffer.
+     * Three Mats are rotated between the producer and the consumer so
+     * neither side ever waits for the other while copying pixels.
+     */
+    public LatestFrameBuffer() {
+        back = new Mat();
+        pending = new Mat();
+        front = new Mat();
+        hasPending = false;
+        closed = false;
+    }
+
+    /**
+     * Publishes a copy of the given frame. If the previous frame has not
+     * been taken yet it is replaced and counted as dropped.
+     *
+     * @param frame the frame to publish
+     * @return the sequence number given to the frame
+     */
+    public long publish(Mat frame) {
+        // Copy outside the lock, the back Mat is only touched by the producer
+        frame.copyTo(back);
+
+        synchronized (this) {
+            Mat published = back;
+            back = pending;
+            pending = published;
+
+            if (hasPending) {
+                droppedFrames.incrementAndGet();
+                PipelineMetrics.get().frameDropped();
+            }
+
+            pendingSequence = nextSequence++;
+            hasPending = true;
+            notifyAll();
+
+            return pendingSequence;
+        }
+    }
+
+    /**
+     * Waits for a frame that has not been taken yet and returns it.
+     * The returned Mat stays valid until the next call to take().
+     *
+     * @return the freshest published frame, or null if the buffer was closed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized Mat take() throws InterruptedException {
+        while (!hasPending && !closed) {
+            wait();
+        }
+
+        return poll();
+    }
+
+    /**
+     * Returns the frame that has not been taken yet without waiting.
+     * The returned Mat stays valid until the next call to take() or poll().
+     *
+     * @return the freshest published frame, or null if there is none
+     */
+    public synchronized Mat poll() {
+        if (!hasPending) {
+            return null;
+        }
+
+        Mat taken = pending;
+        pending = front;
+        front = taken;
+        frontSequence = pendingSequence;
+        hasPending = false;
+
+        return front;
+    }
+
+    /**
+     * Returns whether a frame has been published that has not been taken yet.
+     *
+     * @return true if a frame is waiting, false otherwise
+     */
+    public synchronized boolean hasPending() {
+        return hasPending;
+    }
+
+    /**
+     * Returns the sequence number of the frame returned by the last call to take().
+     *
+     * @return the sequence number of the taken frame
+     */
+    public synchronized long getTakenSequence() {
+        return frontSequence;
+    }
+
+    /**
+     * Closes the buffer and wakes up any thread waiting in take().
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Closes the buffer and releases the native memory of its Mats.
+     * Must only be called once neither the producer nor the consumer uses
+     * the buffer anymore, since the Mat returned by take() is released too.
+     */
+    public synchronized void release() {
+        close();
+        back.release();
+        pending.release();
+        front.release();
+    }
+
+    /**
+     * Returns the number of frames that were replaced before the
+     * consumer took them.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+}
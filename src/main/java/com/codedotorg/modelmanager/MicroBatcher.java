@@ -0,0 +1,225 @@
+package com.codedotorg.modelmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.Mat;
+
+public class MicroBatcher implements StreamPredictor {
+
+    /** Runs the batched predictions */
+    private final ModelPredictor predictor;
+
+    /** The largest number of frames predicted in one Session.run */
+    private final int maxBatch;
+
+    /** The longest time in nanoseconds the first frame of a batch waits for more frames */
+    private final long maxWait;
+
+    /** The streams fed into the batcher, indexed by stream id */
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+
+    /** The streams with a frame waiting, in the order their frames arrived */
+    private final BlockingQueue<Stream> ready = new LinkedBlockingQueue<>();
+
+    /** Prepares the batches, only used by the batching thread and created on its first batch */
+    private FramePreprocessor batchPreprocessor;
+
+    /** The thread collecting and predicting the batches */
+    private final Thread batchThread;
+
+    /**
+     * Constructs a MicroBatcher that collects frames from several streams
+     * into batches and predicts each batch with a single Session.run, so the
+     * cost per frame drops as more streams are added. A batch is run once it
+     * holds maxBatch frames or its first frame has waited maxWaitMillis,
+     * whichever comes first, and holds at most one frame per stream.
+     *
+     * @param model the loaded model
+     * @param maxBatch the largest number of frames in a batch
+     * @param maxWaitMillis the longest time the first frame of a batch waits for more frames
+     */
+    public MicroBatcher(ModelManager model, int maxBatch, double maxWaitMillis) {
+        this.predictor = model.getModelPredictor();
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWait = (long) (maxWaitMillis * 1_000_000);
+
+        batchThread = new Thread(this::runBatches, "micro-batcher");
+        batchThread.setDaemon(true);
+        batchThread.start();
+    }
+
+    /**
+     * Adds a stream of frames. Its predictions are passed to the listener on
+     * the batching thread, one at a time and in frame order.
+     *
+     * @param listener called with each prediction made for the stream
+     * @return the id of the stream, used with submit()
+     */
+    public synchronized int addStream(PredictionListener listener) {
+        streams.add(new Stream(listener));
+        return streams.size() - 1;
+    }
+
+    /**
+     * Hands a frame of a stream to the next batch. The frame is copied, so
+     * the caller can reuse it right away. A newer frame replaces the one
+     * of the same stream still waiting for its batch.
+     *
+     * @param streamId the id returned by addStream()
+     * @param frame the BGR frame
+     * @return the sequence number given to the frame within its stream
+     */
+    public long submit(int streamId, Mat frame) {
+        Stream stream = streams.get(streamId);
+        long sequence = stream.frames.publish(frame);
+
+        // Put the stream in line unless it is already waiting for a batch
+        schedule(stream);
+        return sequence;
+    }
+
+    /**
+     * Returns the number of frames of a stream that were replaced by a newer
+     * frame before they made it into a batch.
+     *
+     * @param streamId the id returned by addStream()
+     * @return the number of dropped frames of the stream
+     */
+    public long getDroppedFrames(int streamId) {
+        return streams.get(streamId).frames.getDroppedFrames();
+    }
+
+    /**
+     * Stops the batching thread and releases the frame buffers of the
+     * streams and the batch buffers. Frames still waiting are dropped. submit() must not be called afterwards.
+     */
+    public void close() {
+        batchThread.interrupt();
+
+        try {
+            batchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (Stream stream : streams) {
+            stream.frames.release();
+        }
+
+        if (batchPreprocessor != null) {
+            batchPreprocessor.release();
+        }
+    }
+
+    /**
+     * Puts a stream in line for the next batch unless it is already there.
+     *
+     * @param stream the stream with a frame waiting
+     */
+    private void schedule(Stream stream) {
+        if (stream.scheduled.compareAndSet(false, true)) {
+            ready.add(stream);
+        }
+    }
+
+    /**
+     * Waits for a frame, collects more frames until the batch is full or the
+     * wait is over, then predicts them all at once and passes each
+     * prediction to the listener of its stream.
+     */
+    private void runBatches() {
+        List<Stream> waiting = new ArrayList<>(maxBatch);
+        List<Stream> batchStreams = new ArrayList<>(maxBatch);
+        List<Mat> batchFrames = new ArrayList<>(maxBatch);
+        long[] sequences = new long[maxBatch];
+
+        try {
+            while (true) {
+                waiting.clear();
+                batchStreams.clear();
+                batchFrames.clear();
+
+                // Wait for the first frame, then give the other streams until the deadline to join
+                BatchCollector.collect(ready, waiting, maxBatch, maxWait);
+
+                // Take the latest frame of each stream, they stay valid until the stream is polled again
+                for (Stream stream : waiting) {
+                    Mat frame = stream.frames.poll();
+                    stream.scheduled.set(false);
+
+                    if (frame != null) {
+                        sequences[batchFrames.size()] = stream.frames.getTakenSequence();
+                        batchStreams.add(stream);
+                        batchFrames.add(frame);
+                    }
+
+                    // A frame published after the poll goes to the next batch
+                    if (stream.frames.hasPending()) {
+                        schedule(stream);
+                    }
+                }
+
+                if (!batchFrames.isEmpty()) {
+                    predictBatch(batchStreams, batchFrames, sequences);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The batcher was closed
+        }
+    }
+
+    /**
+     * Predicts a batch with a single Session.run when the model allows it
+     * and passes each prediction to the listener of its stream.
+     *
+     * @param batchStreams the stream of each frame
+     * @param batchFrames the frames of the batch
+     * @param sequences the sequence number of each frame
+     */
+    private void predictBatch(List<Stream> batchStreams, List<Mat> batchFrames, long[] sequences) {
+        try {
+            // The batcher has its own buffers, so it does not wait for other batchers of the model
+            if (batchPreprocessor == null) {
+                batchPreprocessor = predictor.newBatchPreprocessor(maxBatch);
+            }
+            float[][] probabilities = predictor.predictBatch(batchFrames, batchPreprocessor);
+
+            for (int i = 0; i < probabilities.length; i++) {
+                batchStreams.get(i).listener.onPrediction(predictor.toPrediction(probabilities[i], sequences[i]));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to predict a batch of " + batchFrames.size() + " frames");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The frames and listener of one stream.
+     */
+    private static class Stream {
+
+        /** Holds the latest frame of the stream that has not been batched yet */
+        private final LatestFrameBuffer frames = new LatestFrameBuffer();
+
+        /** Called with each prediction made for the stream */
+        private final PredictionListener listener;
+
+        /** Whether the stream is waiting for a batch */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * Constructs a Stream.
+         *
+         * @param listener called with each prediction made for the stream
+         */
+        private Stream(PredictionListener listener) {
+            this.listener = listener;
+        }
+    }
+}
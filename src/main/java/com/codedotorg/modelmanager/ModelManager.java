@@ -1,8 +1,41 @@
 package com.codedotorg.modelmanager;
 
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.opencv.core.Mat;
+import org.tensorflow.Tensor;
+
+import com.codedotorg.metrics.PipelineMetrics;
 
 public class ModelManager {
+
+    /** The number of warm-up inferences to run while loading */
+    private static final int WARMUP_RUNS = PipelineConfig.getInt("warmup.runs", 3);
+
+    /** The number of recent frames remembered by the prediction cache, 0 to disable it */
+    private static final int CACHE_SIZE = PipelineConfig.getInt("cache.size", 0);
+
+    /** The largest number of differing hash bits for two frames to share a prediction */
+    private static final int CACHE_TOLERANCE = PipelineConfig.getInt("cache.tolerance", 2);
+
+    /** The largest number of frames waiting in getPredictionAsync() */
+    private static final int ASYNC_QUEUE = PipelineConfig.getInt("async.queue", 16);
+
+    /** What getPredictionAsync() does when its queue is full */
+    private static final OverflowPolicy ASYNC_POLICY =
+            OverflowPolicy.parse(PipelineConfig.getString("async.policy", "drop-oldest"), OverflowPolicy.DROP_OLDEST);
+
+    /** The default time in milliseconds a getPredictionAsync() frame may wait, 0 for no deadline */
+    private static final int ASYNC_TIMEOUT = PipelineConfig.getInt("async.timeoutMs", 1000);
+
+    /** The largest number of frames predicted together by getPredictionAsync() */
+    private static final int BATCH_MAX = PipelineConfig.getInt("batch.max", 8);
+
+    /** The longest time in milliseconds a getPredictionAsync() frame waits for its batch to fill */
+    private static final double BATCH_WAIT = PipelineConfig.getDouble("batch.waitMs", 5);
     
     /** The ModelProcessor to load and process the model */
     private ModelProcessor modelProcessor;
@@ -10,15 +43,35 @@ public class ModelManager {
     /** The ModelPredictor to predict the class and obtain the confidence score */
     private ModelPredictor modelPredictor;
 
+    /** Remembers the predictions of recent frames by their perceptual hash, or null if disabled */
+    private final PredictionCache cache;
+
+    /** Predicts the frames of getPredictionAsync(), created on first use */
+    private volatile BatchingPredictor asyncPredictor;
+
+    /** Whether the warm-up has finished and predictions run at full speed */
+    private volatile boolean hot;
+
+    /** Whether the first real prediction has been made */
+    private volatile boolean firstPredictionMade;
+
     /**
      * Constructs a new ModelManager object.
-     * Initializes a ModelProcessor object, loads the model and labels, and initializes a ModelPredictor object.
+     * Initializes a ModelProcessor object, loads the model and labels, initializes a ModelPredictor object
+     * and warms up the model so the first real prediction does not pay for graph initialization.
      */
     public ModelManager() {
+        long start = System.nanoTime();
+
         modelProcessor = new ModelProcessor();
         modelProcessor.loadModel();
         modelProcessor.loadLabels();
         modelPredictor = new ModelPredictor(modelProcessor);
+        cache = CACHE_SIZE > 0 ? new PredictionCache(CACHE_SIZE, CACHE_TOLERANCE) : null;
+
+        warmUp(WARMUP_RUNS);
+
+        System.out.println("Model ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
     }
 
     /**
@@ -30,6 +83,24 @@ public class ModelManager {
         return modelProcessor;
     }
     
+    /**
+     * Returns the ModelPredictor object associated with this ModelManager.
+     *
+     * @return the ModelPredictor object associated with this ModelManager
+     */
+    public ModelPredictor getModelPredictor() {
+        return modelPredictor;
+    }
+
+    /**
+     * Returns the prediction cache, which is null unless cache.size is set.
+     *
+     * @return the prediction cache, or null if it is disabled
+     */
+    PredictionCache getCache() {
+        return cache;
+    }
+
     /**
      * Returns a Prediction object containing the predicted class name and confidence level for a given input frame.
      * 
@@ -37,7 +108,228 @@ public class ModelManager {
      * @return a Prediction object containing the predicted class name and confidence level
      */
     public Prediction getPrediction(Mat frame) {
-        return modelPredictor.processFrameAndGetClassNameWithConfidence(frame);
+        return getPrediction(frame, -1);
+    }
+
+    /**
+     * Returns a Prediction object for a numbered frame from the camera.
+     * The sequence number is attached to the Flight Recorder events of the frame.
+     * When the prediction cache is enabled, a frame that looks like a recent
+     * one reuses its probabilities instead of running the model.
+     *
+     * The frame is prepared into the model's one shared input buffer, so
+     * callers on different threads take turns. Threads that should predict
+     * at the same time can use getPredictionAsync(), or getPrediction() with
+     * a preprocessor of their own.
+     *
+     * @param frame the input frame to be processed
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @return a Prediction object containing the predicted class name and confidence level
+     */
+    public Prediction getPrediction(Mat frame, long sequence) {
+        FramePreprocessor preprocessor = modelProcessor.getPreprocessor();
+
+        // ModelPredictor.processAndPredict() locks the same buffer, so no two callers fill it at once
+        synchronized (preprocessor) {
+            if (firstPredictionMade) {
+                return getPrediction(frame, sequence, preprocessor);
+            }
+
+            long start = System.nanoTime();
+            Prediction prediction = getPrediction(frame, sequence, preprocessor);
+            firstPredictionMade = true;
+
+            System.out.println("First prediction took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return prediction;
+        }
+    }
+
+    /**
+     * Returns a Prediction object for a numbered frame, prepared with the
+     * given preprocessor. Threads that each have their own preprocessor can
+     * call this at the same time, since the Session is safe to share.
+     * When the prediction cache is enabled, a frame that looks like a recent
+     * one reuses its probabilities instead of running the model.
+     *
+     * @param frame the input frame to be processed
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @param preprocessor the preprocessor to prepare the frame with, not used by other threads meanwhile
+     * @return a Prediction object containing the predicted class name and confidence level
+     */
+    public Prediction getPrediction(Mat frame, long sequence, FramePreprocessor preprocessor) {
+        if (cache == null) {
+            return modelPredictor.toPrediction(predict(frame, sequence, preprocessor), sequence);
+        }
+
+        PipelineMetrics metrics = PipelineMetrics.get();
+        long hash = cache.hash(frame);
+        float[] probabilities = cache.get(hash);
+
+        if (probabilities != null) {
+            metrics.cacheHit();
+        }
+        else {
+            long start = System.nanoTime();
+            probabilities = predict(frame, sequence, preprocessor);
+            metrics.cacheMiss(System.nanoTime() - start);
+            cache.put(hash, probabilities);
+        }
+
+        return modelPredictor.toPrediction(probabilities, sequence);
+    }
+
+    /**
+     * Predicts a frame without blocking the caller, using the default deadline set with async.timeoutMs.
+     *
+     * @param frame the input frame to be processed, which can be reused as soon as this returns
+     * @return a future completed with the prediction
+     * @see #getPredictionAsync(Mat, long)
+     */
+    public CompletableFuture<Prediction> getPredictionAsync(Mat frame) {
+        return getPredictionAsync(frame, ASYNC_TIMEOUT);
+    }
+
+    /**
+     * Predicts a frame without blocking the caller. The frame is copied into
+     * a bounded queue shared by every caller of this model, and frames that
+     * arrive together are predicted in one batch. When the queue is full,
+     * async.policy decides whether the oldest frame is dropped (drop-oldest),
+     * the new frame is rejected (reject) or the caller waits for room (block).
+     * A frame whose deadline passes or whose future is cancelled while it
+     * waits is dropped without running the model.
+     * When the prediction cache is enabled, a frame that looks like a recent
+     * one is answered at once, as with getPrediction().
+     *
+     * @param frame the input frame to be processed, which can be reused as soon as this returns
+     * @param timeoutMillis the longest time to wait for the prediction, or 0 for no deadline
+     * @return a future completed with the prediction, or failed with a
+     *         RejectedExecutionException if the frame was dropped or rejected,
+     *         or with a TimeoutException if the deadline passed
+     */
+    public CompletableFuture<Prediction> getPredictionAsync(Mat frame, long timeoutMillis) {
+        return getAsyncPredictor().submit(frame.clone(), timeoutMillis);
+    }
+
+    /**
+     * Returns the number of frames waiting in getPredictionAsync().
+     *
+     * @return the queue depth, 0 if getPredictionAsync() has not been used yet
+     */
+    public int getAsyncQueueDepth() {
+        BatchingPredictor predictor = asyncPredictor;
+        return predictor == null ? 0 : predictor.getQueueDepth();
+    }
+
+    /**
+     * Returns the largest number of frames that can wait in
+     * getPredictionAsync(), set with async.queue.
+     *
+     * @return the capacity of the queue
+     */
+    public int getAsyncCapacity() {
+        return ASYNC_QUEUE;
+    }
+
+    /**
+     * Returns the predictor behind getPredictionAsync(), creating it on first
+     * use so models that are only used synchronously never start its thread.
+     *
+     * @return the predictor of getPredictionAsync()
+     */
+    private BatchingPredictor getAsyncPredictor() {
+        BatchingPredictor predictor = asyncPredictor;
+
+        if (predictor == null) {
+            synchronized (this) {
+                predictor = asyncPredictor;
+                if (predictor == null) {
+                    predictor = new BatchingPredictor(this, BATCH_MAX, BATCH_WAIT, ASYNC_QUEUE, ASYNC_POLICY);
+                    asyncPredictor = predictor;
+                }
+            }
+        }
+        return predictor;
+    }
+
+    /**
+     * Prepares a frame with the given preprocessor and runs the model on it.
+     *
+     * @param frame the input frame to be processed
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @param preprocessor the preprocessor to prepare the frame with
+     * @return the predicted class probabilities
+     */
+    private float[] predict(Mat frame, long sequence, FramePreprocessor preprocessor) {
+        return modelPredictor.predictPrepared(modelPredictor.prepare(frame, preprocessor, sequence), sequence);
+    }
+
+    /**
+     * Returns a Prediction for each of the given frames. The frames are
+     * run through the model together in as few Session.run calls as the
+     * model's batch dimension allows.
+     *
+     * @param frames the input frames to be processed
+     * @return a Prediction for each frame, in the same order as the frames
+     */
+    public List<Prediction> getPredictions(List<Mat> frames) {
+        float[][] probabilities = modelPredictor.predictBatch(frames);
+
+        List<Prediction> predictions = new ArrayList<>(probabilities.length);
+        for (float[] frameProbabilities : probabilities) {
+            predictions.add(modelPredictor.toPrediction(frameProbabilities));
+        }
+        return predictions;
+    }
+
+    /**
+     * Returns whether the model has been warmed up and is ready to
+     * make predictions at full speed.
+     *
+     * @return true if the model is hot, false otherwise
+     */
+    public boolean isHot() {
+        return hot;
+    }
+
+    /**
+     * Runs the model on a blank input the given number of times, so graph
+     * initialization and kernel selection happen while loading instead of
+     * during the first round. Prints how long the first and last runs took.
+     *
+     * @param runs the number of warm-up inferences to run
+     */
+    private void warmUp(int runs) {
+        FramePreprocessor preprocessor = modelProcessor.getPreprocessor();
+
+        // Skip the warm-up if the model failed to load
+        if (preprocessor == null || runs <= 0) {
+            hot = preprocessor != null;
+            return;
+        }
+
+        FloatBuffer blank = FloatBuffer.allocate(preprocessor.getFrameSize());
+        long firstRun = 0;
+        long lastRun = 0;
+
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+
+            // Creating a tensor consumes the buffer, so start from the beginning every run
+            blank.rewind();
+
+            try (Tensor<Float> tensorInput = modelProcessor.floatBufferToTensor(blank)) {
+                modelPredictor.predict(tensorInput);
+            }
+
+            lastRun = System.nanoTime() - start;
+            if (i == 0) {
+                firstRun = lastRun;
+            }
+        }
+
+        hot = true;
+        System.out.println("Model is hot after " + runs + " warm-up runs (first " + firstRun / 1_000_000
+                + " ms, last " + lastRun / 1_000_000 + " ms)");
     }
     
 }
@@ -1,13 +1,23 @@
 package com.codedotorg.modelmanager;
 
+import java.nio.FloatBuffer;
+import java.util.List;
+
 import org.opencv.core.Mat;
 import org.tensorflow.Tensor;
 
+import com.codedotorg.metrics.FrameInferenceEvent;
+import com.codedotorg.metrics.FramePreprocessEvent;
+import com.codedotorg.metrics.PipelineMetrics;
+
 public class ModelPredictor {
 
     /** The ModelProcessor to load and process the model */
     private ModelProcessor modelProcessor;
 
+    /** Prepares batches of frames, grown when a larger batch is requested */
+    private FramePreprocessor batchPreprocessor;
+
     /**
      * Constructs a new ModelPredictor object with the given ModelProcessor.
      * 
@@ -19,38 +29,251 @@ public class ModelPredictor {
     
     /**
      * Predicts using the model.
+     * The caller owns tensorInput and is responsible for closing it.
      *
      * @param tensorInput The Tensor input for the model.
      * @return The list of predicted class probabilities.
      */
     public float[] predict(Tensor<Float> tensorInput) {
-        // The name of the input node and output node may vary based on your model. Adjust accordingly.
-        String inputNodeName = modelProcessor.getInputNodeName();
-        String outputNodeName = modelProcessor.getOutputNodeName() + ":0";
+        return predictAll(tensorInput)[0]; // return the predictions for the first (and only) batch
+    }
+
+    /**
+     * Predicts every frame in a batched input tensor with a single Session.run.
+     * The caller owns tensorInput and is responsible for closing it.
+     *
+     * @param tensorInput The Tensor input for the model, [batch_size, height, width, channels].
+     * @return The predicted class probabilities for each frame in the batch.
+     */
+    public float[][] predictAll(Tensor<Float> tensorInput) {
+        // The input and output are resolved once when the model is loaded
+        ModelSignature signature = modelProcessor.getSignature();
 
         try (Tensor<Float> result = modelProcessor.getSession().runner()
-                .feed(inputNodeName, tensorInput)
-                .fetch(outputNodeName)
+                .feed(signature.getInput(), tensorInput)
+                .fetch(signature.getOutput())
                 .run()
                 .get(0)
                 .expect(Float.class)) {
 
-            float[][] outputArray = new float[1][(int) result.shape()[1]]; // assuming the output shape is [batch_size, number_of_classes]
+            long[] shape = result.shape(); // assuming the output shape is [batch_size, number_of_classes]
+            float[][] outputArray = new float[(int) shape[0]][(int) shape[1]];
             result.copyTo(outputArray);
-            return outputArray[0]; // return the predictions for the first (and only) batch
+            return outputArray;
         }
     }
 
+    /**
+     * Predicts a batch of frames that have already been prepared into one buffer.
+     * All frames go through a single Session.run when the model accepts that batch
+     * size. If the model's batch dimension is fixed to another size N, the frames
+     * are predicted N at a time, padding the last run with blank frames whose
+     * predictions are dropped.
+     *
+     * @param input The buffer holding count prepared frames, starting at its position.
+     * @param count The number of frames in the buffer.
+     * @return The predicted class probabilities for each frame.
+     */
+    public float[][] predictBatch(FloatBuffer input, int count) {
+        FramePreprocessor preprocessor = modelProcessor.getPreprocessor();
+
+        if (acceptsBatchSize(count)) {
+            try (Tensor<Float> tensorInput = Tensor.create(preprocessor.getTensorShape(count), input)) {
+                return predictAll(tensorInput);
+            }
+        }
+
+        // Fall back to one Session.run per chunk of the model's fixed batch size
+        int batchSize = (int) modelProcessor.getSignature().getInputShape()[0];
+        int frameSize = preprocessor.getFrameSize();
+        int start = input.position();
+        float[][] predictions = new float[count][];
+
+        for (int first = 0; first < count; first += batchSize) {
+            int frames = Math.min(batchSize, count - first);
+            FloatBuffer chunk = input.duplicate();
+            chunk.limit(start + (first + frames) * frameSize).position(start + first * frameSize);
+
+            // The last chunk is padded with zeros up to the batch size
+            if (frames < batchSize) {
+                FloatBuffer padded = FloatBuffer.allocate(batchSize * frameSize);
+                padded.put(chunk).rewind();
+                chunk = padded;
+            }
+
+            try (Tensor<Float> tensorInput = Tensor.create(preprocessor.getTensorShape(batchSize), chunk)) {
+                float[][] chunkPredictions = predictAll(tensorInput);
+                System.arraycopy(chunkPredictions, 0, predictions, first, frames);
+            }
+        }
+
+        return predictions;
+    }
+
+    /**
+     * Prepares and predicts a batch of frames with a preprocessor shared by
+     * every caller of this method. Callers are serialized, so threads that
+     * predict batches at the same time should pass their own preprocessor
+     * to predictBatch(List, FramePreprocessor) instead.
+     *
+     * @param frames The Mat frames to be processed.
+     * @return The predicted class probabilities for each frame, in the same order.
+     */
+    public synchronized float[][] predictBatch(List<Mat> frames) {
+        int count = frames.size();
+
+        // Grow the batch buffers only when a larger batch than before is requested
+        if (batchPreprocessor == null || batchPreprocessor.getCapacity() < count) {
+            if (batchPreprocessor != null) {
+                batchPreprocessor.release();
+            }
+            batchPreprocessor = newBatchPreprocessor(count);
+        }
+
+        return predictBatch(frames, batchPreprocessor);
+    }
+
+    /**
+     * Prepares and predicts a batch of frames with the caller's preprocessor,
+     * so batches of different threads can be predicted at the same time.
+     *
+     * @param frames The Mat frames to be processed.
+     * @param preprocessor The preprocessor to prepare the frames with, holding at least frames.size() frames.
+     * @return The predicted class probabilities for each frame, in the same order.
+     */
+    public float[][] predictBatch(List<Mat> frames, FramePreprocessor preprocessor) {
+        int count = frames.size();
+        PipelineMetrics metrics = PipelineMetrics.get();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            preprocessor.prepare(frames.get(i), i);
+        }
+        metrics.preprocess().recordSince(start);
+
+        long inferenceStart = System.nanoTime();
+        float[][] predictions = predictBatch(preprocessor.getBuffer(count), count);
+        metrics.inference().recordSince(inferenceStart);
+
+        for (int i = 0; i < count; i++) {
+            metrics.inferenceDone();
+        }
+        return predictions;
+    }
+
+    /**
+     * Creates a preprocessor for batches of up to the given number of frames
+     * of this model, to be passed to predictBatch(List, FramePreprocessor).
+     * The caller owns it and must release it.
+     *
+     * @param capacity The largest number of frames in a batch.
+     * @return The new preprocessor.
+     */
+    public FramePreprocessor newBatchPreprocessor(int capacity) {
+        return new FramePreprocessor(modelProcessor.getSignature().getInputShape(), capacity);
+    }
+
+    /**
+     * Returns whether the model accepts a batch of the given size in one run,
+     * which is the case when its batch dimension is unknown or equal to count.
+     *
+     * @param count The number of frames in the batch.
+     * @return true if the batch can be fed as a single tensor, false otherwise.
+     */
+    public boolean acceptsBatchSize(int count) {
+        long[] inputShape = modelProcessor.getSignature().getInputShape();
+        return inputShape.length == 0 || inputShape[0] <= 0 || inputShape[0] == count;
+    }
+
     /**
      * Process the frame and get the model's prediction.
+     * The input tensor holds native memory, so it is closed as soon as
+     * the prediction is done.
      *
      * @param frame The Mat frame to be processed.
      * @return The list of predicted class probabilities.
      */
     public float[] processAndPredict(Mat frame) {
-        float[] floatArrayInput = modelProcessor.prepareFrameForModel(frame);
-        Tensor<Float> tensorInput = modelProcessor.floatArrayToTensor(floatArrayInput);
-        return predict(tensorInput);
+        return processAndPredict(frame, -1);
+    }
+
+    /**
+     * Process a numbered frame and get the model's prediction. The preprocessing
+     * and the inference are recorded as Flight Recorder events carrying the
+     * sequence number, so a slow frame can be matched with GC or native pauses.
+     * The frame goes through the model's shared input buffer, which is locked
+     * until the model has read it, so callers on different threads take turns.
+     *
+     * @param frame The Mat frame to be processed.
+     * @param sequence The sequence number of the frame, or -1 if it is not numbered.
+     * @return The list of predicted class probabilities.
+     */
+    public float[] processAndPredict(Mat frame, long sequence) {
+        FramePreprocessor preprocessor = modelProcessor.getPreprocessor();
+
+        synchronized (preprocessor) {
+            return predictPrepared(prepare(frame, preprocessor, sequence), sequence);
+        }
+    }
+
+    /**
+     * Prepares a numbered frame for the model with the given preprocessor,
+     * recording the time taken and a Flight Recorder event. Using a
+     * preprocessor other than the model's own lets the next frame be
+     * prepared while the model still reads the previous one.
+     *
+     * @param frame The Mat frame to be processed.
+     * @param preprocessor The preprocessor holding the buffer to fill.
+     * @param sequence The sequence number of the frame, or -1 if it is not numbered.
+     * @return The buffer of the preprocessor holding the prepared frame.
+     */
+    public FloatBuffer prepare(Mat frame, FramePreprocessor preprocessor, long sequence) {
+        FramePreprocessEvent preprocessEvent = new FramePreprocessEvent();
+        preprocessEvent.begin();
+        long start = System.nanoTime();
+
+        FloatBuffer floatBufferInput = preprocessor.prepare(frame);
+
+        PipelineMetrics.get().preprocess().recordSince(start);
+        if (preprocessEvent.shouldCommit()) {
+            preprocessEvent.sequence = sequence;
+            preprocessEvent.commit();
+        }
+
+        return floatBufferInput;
+    }
+
+    /**
+     * Runs the model on a prepared frame, recording the time taken and a
+     * Flight Recorder event. The input tensor holds native memory, so it
+     * is closed as soon as the prediction is done.
+     *
+     * @param floatBufferInput The buffer holding the prepared frame.
+     * @param sequence The sequence number of the frame, or -1 if it is not numbered.
+     * @return The list of predicted class probabilities.
+     */
+    public float[] predictPrepared(FloatBuffer floatBufferInput, long sequence) {
+        PipelineMetrics metrics = PipelineMetrics.get();
+
+        try (Tensor<Float> tensorInput = modelProcessor.floatBufferToTensor(floatBufferInput)) {
+            FrameInferenceEvent inferenceEvent = new FrameInferenceEvent();
+            inferenceEvent.begin();
+            long inferenceStart = System.nanoTime();
+
+            float[] predictions = predict(tensorInput);
+
+            metrics.inference().recordSince(inferenceStart);
+            metrics.inferenceDone();
+
+            if (inferenceEvent.shouldCommit()) {
+                inferenceEvent.sequence = sequence;
+                inferenceEvent.classIndex = getIndexOfMaxValue(predictions);
+                inferenceEvent.confidence = predictions[inferenceEvent.classIndex];
+                inferenceEvent.commit();
+            }
+
+            return predictions;
+        }
     }
 
     /**
@@ -109,10 +332,42 @@ public class ModelPredictor {
      * @return a Prediction object containing the predicted class name and confidence level
      */
     public Prediction processFrameAndGetClassNameWithConfidence(Mat frame) {
-        float[] predictions = processAndPredict(frame);
+        return processFrameAndGetClassNameWithConfidence(frame, -1);
+    }
+
+    /**
+     * Processes a numbered frame and returns the predicted class name and confidence level.
+     * 
+     * @param frame the frame to be processed
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @return a Prediction object containing the predicted class name and confidence level
+     */
+    public Prediction processFrameAndGetClassNameWithConfidence(Mat frame, long sequence) {
+        return toPrediction(processAndPredict(frame, sequence), sequence);
+    }
+
+    /**
+     * Builds a Prediction from the most likely class of the given probabilities.
+     *
+     * @param predictions The predicted class probabilities.
+     * @return a Prediction object containing the predicted class name and confidence level
+     */
+    public Prediction toPrediction(float[] predictions) {
+        return toPrediction(predictions, -1);
+    }
+
+    /**
+     * Builds a Prediction for a numbered frame from the most likely class of the given probabilities.
+     *
+     * @param predictions The predicted class probabilities.
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @return a Prediction object containing the predicted class name, index and confidence level
+     */
+    public Prediction toPrediction(float[] predictions, long sequence) {
+        int classIndex = getIndexOfMaxValue(predictions);
         String className = getPredictedClassName(predictions);
         float confidence = getPredictedClassConfidence(predictions);
-        return new Prediction(className, confidence);
+        return new Prediction(className, classIndex, confidence, sequence, predictions);
     }
 
 }
@@ -13,17 +13,20 @@ import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.tensorflow.Graph;
 import org.tensorflow.Operation;
+import org.tensorflow.Output;
 import org.tensorflow.SavedModelBundle;
 import org.tensorflow.Session;
 import org.tensorflow.Tensor;
+import org.tensorflow.framework.ConfigProto;
 
 public class ModelProcessor {
 
-    /** The path to the directory containing the model */
-    private static final String MODEL_PATH = "src\\main\\java\\com\\codedotorg\\model\\";
+    /** The path to the directory containing the model, set with model.path */
+    private static final String MODEL_PATH = PipelineConfig.getString("model.path",
+            Paths.get("src", "main", "java", "com", "codedotorg", "model").toString());
 
     /** The path to the labels.txt file (should be in the root of the model directory) */
-    private static final String LABELS_PATH = MODEL_PATH + "labels.txt";
+    private static final String LABELS_PATH = Paths.get(MODEL_PATH, "labels.txt").toString();
 
     /** Represents the TensorFlow model and its associated variables */
     private SavedModelBundle bundle;
@@ -31,6 +34,12 @@ public class ModelProcessor {
     /** Represents a TensorFlow session, which is used to run the model and make predictions */
     private Session session;
 
+    /** The input and output of the model, resolved once when the model is loaded */
+    private ModelSignature signature;
+
+    /** Resizes and normalizes frames into reusable buffers sized from the model input */
+    private FramePreprocessor preprocessor;
+
     /** The list of class labels for the model */
     private List<String> labels;
 
@@ -41,9 +50,25 @@ public class ModelProcessor {
         bundle = null;
         session = null;
     }
+
+    /**
+     * Constructs a ModelProcessor for a graph already running in a session,
+     * such as a small synthetic graph in tests, instead of loading the SavedModel.
+     *
+     * @param session the session running the graph
+     * @param signature the input and output of the graph
+     * @param labels the class labels, one per output
+     */
+    ModelProcessor(Session session, ModelSignature signature, List<String> labels) {
+        this.session = session;
+        this.signature = signature;
+        this.labels = labels;
+        this.preprocessor = new FramePreprocessor(signature.getInputShape());
+    }
     
     /**
-     * Loads a saved model from the specified path and creates a session.
+     * Loads a saved model from the specified path, creates a session and resolves
+     * the model signature so the graph never has to be searched per frame.
      * Prints a message to the console if the model is loaded successfully.
      * Prints an error message and stack trace to the console if the model fails to load.
      */
@@ -51,26 +76,83 @@ public class ModelProcessor {
         try {
             // Load the TensorFlow model from the MODEL_PATH directory and create a new
             // SavedModelBundle object. "serve" specifies the model signature name.
-            bundle = SavedModelBundle.load(MODEL_PATH, "serve");
+            bundle = SavedModelBundle.loader(MODEL_PATH)
+                    .withTags("serve")
+                    .withConfigProto(createSessionConfig().toByteArray())
+                    .load();
 
             // Sets the session to a new Session object to run the TensorFlow model and make predictions
             session = bundle.session();
+
+            // Resolve the input and output from the signature_def, falling back to
+            // searching the graph by name if the model does not export one
+            signature = ModelSignature.fromSavedModel(bundle);
+            if (signature == null) {
+                Graph graph = bundle.graph();
+                String inputName = getInputNodeName();
+                String outputName = getOutputNodeName();
+                Output<?> input = ModelSignature.resolve(graph, inputName);
+                Output<?> output = ModelSignature.resolve(graph, outputName);
+
+                if (input == null || output == null) {
+                    throw new IllegalStateException("The model has no signature_def and its input and output nodes"
+                            + " could not be found by name (input: \"" + inputName + "\", output: \"" + outputName + "\")");
+                }
+                signature = new ModelSignature(input, output);
+            }
+
+            // Size the reusable preprocessing buffers from the model's input shape
+            preprocessor = new FramePreprocessor(signature.getInputShape());
+
             System.out.println("Model loaded successfully");
+            System.out.println(signature);
         } catch (Exception e) {
             System.err.println("Failed to load the model");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Builds the TensorFlow session options from the pipeline settings.
+     * A thread count of 0 lets TensorFlow pick one thread per core, which
+     * competes with the capture and JavaFX threads on small machines.
+     *
+     * @return the ConfigProto used to create the session
+     */
+    public ConfigProto createSessionConfig() {
+        ConfigProto config = ConfigProto.newBuilder()
+                .setIntraOpParallelismThreads(PipelineConfig.getInt("tf.intraOpThreads", 0))
+                .setInterOpParallelismThreads(PipelineConfig.getInt("tf.interOpThreads", 0))
+                .setUsePerSessionThreads(PipelineConfig.getBoolean("tf.usePerSessionThreads", false))
+                .setAllowSoftPlacement(PipelineConfig.getBoolean("tf.allowSoftPlacement", true))
+                .setLogDevicePlacement(PipelineConfig.getBoolean("tf.logDevicePlacement", false))
+                .build();
+
+        System.out.println("Session threads: intra-op=" + config.getIntraOpParallelismThreads()
+                + ", inter-op=" + config.getInterOpParallelismThreads());
+        return config;
+    }
+
     /**
      * Returns the name of the input node in the TensorFlow model.
      *
      * @return The name of the input node.
      */
     public String getInputNodeName() {
+        return findInputNodeName(bundle.graph());
+    }
+
+    /**
+     * Searches the graph for the last operation with "input" in its name.
+     * This walks every operation, which is why it only runs when the
+     * model is loaded without a signature_def.
+     *
+     * @param graph the graph to search
+     * @return The name of the input node, or an empty string if there is none.
+     */
+    static String findInputNodeName(Graph graph) {
         String inputNodeName = "";
 
-        Graph graph = bundle.graph();
         Iterator<Operation> operations = graph.operations();
 
         while (operations.hasNext()) {
@@ -92,9 +174,18 @@ public class ModelProcessor {
      * @return The name of the output node of the TensorFlow model.
      */
     public String getOutputNodeName() {
+        return findOutputNodeName(bundle.graph());
+    }
+
+    /**
+     * Searches the graph for the operation following the last one with "input" in its name.
+     *
+     * @param graph the graph to search
+     * @return The name of the output node, or an empty string if there is none.
+     */
+    static String findOutputNodeName(Graph graph) {
         String outputNodeName = "";
 
-        Graph graph = bundle.graph();
         Iterator<Operation> operations = graph.operations();
 
         while (operations.hasNext()) {
@@ -137,6 +228,24 @@ public class ModelProcessor {
         return session;
     }
 
+    /**
+     * Returns the input and output of the model resolved when it was loaded.
+     *
+     * @return the model signature
+     */
+    public ModelSignature getSignature() {
+        return signature;
+    }
+
+    /**
+     * Returns the preprocessor that prepares frames for the model input.
+     *
+     * @return the frame preprocessor, or null if the model is not loaded
+     */
+    public FramePreprocessor getPreprocessor() {
+        return preprocessor;
+    }
+
     /**
      * Returns a list of labels for the model.
      *
@@ -186,18 +295,19 @@ public class ModelProcessor {
 
     /**
      * Prepares the Mat frame for model input.
+     * The frame is resized and normalized into buffers that are reused for
+     * every frame, so no memory is allocated per frame.
      *
      * @param frame The Mat frame to prepare.
-     * @return The float array representing the reshaped frame.
+     * @return The direct buffer representing the reshaped frame, overwritten by the next call.
      */
-    public float[] prepareFrameForModel(Mat frame) {
-        Mat resizedFrame = resizeFrame(frame);
-        byte[] byteArray = matToByteArray(resizedFrame);
-        return byteArrayToFloatArray(byteArray);
+    public FloatBuffer prepareFrameForModel(Mat frame) {
+        return preprocessor.prepare(frame);
     }
 
     /**
      * Converts the float array to a TensorFlow Tensor.
+     * The Tensor holds native memory and must be closed by the caller.
      *
      * @param floatArray The float array to convert.
      * @return A Tensor representing the input data.
@@ -207,4 +317,15 @@ public class ModelProcessor {
         return Tensor.create(shape, FloatBuffer.wrap(floatArray));
     }
 
+    /**
+     * Converts a buffer filled by prepareFrameForModel to a TensorFlow Tensor.
+     * The Tensor holds native memory and must be closed by the caller.
+     *
+     * @param floatBuffer The buffer to convert.
+     * @return A Tensor representing the input data.
+     */
+    public Tensor<Float> floatBufferToTensor(FloatBuffer floatBuffer) {
+        return Tensor.create(preprocessor.getTensorShape(), floatBuffer);
+    }
+
 }
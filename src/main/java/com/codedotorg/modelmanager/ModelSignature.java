@@ -0,0 +1,201 @@
+package com.codedotorg.modelmanager;
+
+import java.util.Map;
+
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+import org.tensorflow.Output;
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.Shape;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.SignatureDef;
+import org.tensorflow.framework.TensorInfo;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+public class ModelSignature {
+
+    /** The name of the signature exported by default in a SavedModel */
+    private static final String DEFAULT_SIGNATURE = "serving_default";
+
+    /** The graph output the input tensor is fed into */
+    private final Output<?> input;
+
+    /** The graph output the predictions are fetched from */
+    private final Output<?> output;
+
+    /** The shape of the input tensor, with -1 for unknown dimensions */
+    private final long[] inputShape;
+
+    /** The shape of the output tensor, with -1 for unknown dimensions */
+    private final long[] outputShape;
+
+    /**
+     * Constructs a ModelSignature from the given graph outputs.
+     * The shapes are read once here so they never have to be looked up per frame.
+     *
+     * @param input the graph output the input tensor is fed into
+     * @param output the graph output the predictions are fetched from
+     */
+    public ModelSignature(Output<?> input, Output<?> output) {
+        this.input = input;
+        this.output = output;
+        this.inputShape = toArray(input.shape());
+        this.outputShape = toArray(output.shape());
+    }
+
+    /**
+     * Resolves the signature from the SavedModel's signature_def. The
+     * "serving_default" signature is used if present, otherwise the first one.
+     * Returns null if the model does not export a usable signature.
+     *
+     * @param bundle the loaded SavedModelBundle
+     * @return the resolved ModelSignature, or null if it cannot be read
+     */
+    public static ModelSignature fromSavedModel(SavedModelBundle bundle) {
+        try {
+            Map<String, SignatureDef> signatures = MetaGraphDef.parseFrom(bundle.metaGraphDef()).getSignatureDefMap();
+
+            SignatureDef signature = signatures.get(DEFAULT_SIGNATURE);
+            if (signature == null && !signatures.isEmpty()) {
+                signature = signatures.values().iterator().next();
+            }
+
+            // Only single input, single output classifiers are supported
+            if (signature == null || signature.getInputsCount() != 1 || signature.getOutputsCount() != 1) {
+                return null;
+            }
+
+            TensorInfo inputInfo = signature.getInputsMap().values().iterator().next();
+            TensorInfo outputInfo = signature.getOutputsMap().values().iterator().next();
+
+            Output<?> input = resolve(bundle.graph(), inputInfo.getName());
+            Output<?> output = resolve(bundle.graph(), outputInfo.getName());
+
+            if (input == null || output == null) {
+                return null;
+            }
+
+            return new ModelSignature(input, output);
+        } catch (InvalidProtocolBufferException e) {
+            System.err.println("Failed to read the model signature");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Finds the graph output for a tensor name such as "input_1:0".
+     *
+     * @param graph the graph containing the tensor
+     * @param tensorName the name of the tensor, with an optional ":index" suffix
+     * @return the graph output, or null if the operation does not exist
+     */
+    public static Output<?> resolve(Graph graph, String tensorName) {
+        String operationName = tensorName;
+        int index = 0;
+
+        int separator = tensorName.lastIndexOf(':');
+        if (separator > 0) {
+            operationName = tensorName.substring(0, separator);
+            index = Integer.parseInt(tensorName.substring(separator + 1));
+        }
+
+        Operation operation = graph.operation(operationName);
+        return operation == null ? null : operation.output(index);
+    }
+
+    /**
+     * Returns the graph output the input tensor is fed into.
+     *
+     * @return the input of the model
+     */
+    public Output<?> getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the graph output the predictions are fetched from.
+     *
+     * @return the output of the model
+     */
+    public Output<?> getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the shape of the input tensor.
+     *
+     * @return the input shape, with -1 for unknown dimensions
+     */
+    public long[] getInputShape() {
+        return inputShape.clone();
+    }
+
+    /**
+     * Returns the shape of the output tensor.
+     *
+     * @return the output shape, with -1 for unknown dimensions
+     */
+    public long[] getOutputShape() {
+        return outputShape.clone();
+    }
+
+    /**
+     * Returns the data type of the input tensor.
+     *
+     * @return the input data type
+     */
+    public DataType getInputType() {
+        return input.dataType();
+    }
+
+    /**
+     * Returns the data type of the output tensor.
+     *
+     * @return the output data type
+     */
+    public DataType getOutputType() {
+        return output.dataType();
+    }
+
+    /**
+     * Returns the number of classes predicted by the model, which
+     * is the last dimension of the output shape.
+     *
+     * @return the number of classes, or -1 if it is unknown
+     */
+    public int getNumClasses() {
+        return outputShape.length == 0 ? -1 : (int) outputShape[outputShape.length - 1];
+    }
+
+    /**
+     * Returns a string representation of the ModelSignature.
+     *
+     * @return a string containing the input and output names and shapes
+     */
+    public String toString() {
+        return "Model Signature: input=" + input.op().name() + ":" + input.index() + " " + input.shape()
+                + " " + getInputType() + ", output=" + output.op().name() + ":" + output.index() + " "
+                + output.shape() + " " + getOutputType();
+    }
+
+    /**
+     * Converts a TensorFlow Shape to an array of dimension sizes.
+     *
+     * @param shape the Shape to convert
+     * @return the dimension sizes, with -1 for unknown dimensions
+     */
+    private static long[] toArray(Shape shape) {
+        if (shape.numDimensions() < 0) {
+            return new long[0];
+        }
+
+        long[] dimensions = new long[shape.numDimensions()];
+        for (int i = 0; i < dimensions.length; i++) {
+            dimensions[i] = shape.size(i);
+        }
+        return dimensions;
+    }
+}
@@ -0,0 +1,98 @@
+package com.codedotorg.modelmanager;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class MotionDetector {
+
+    /** The width frames are shrunk to before being compared */
+    private static final int WIDTH = 32;
+
+    /** The height frames are shrunk to before being compared */
+    private static final int HEIGHT = 24;
+
+    /** The size frames are shrunk to before being compared */
+    private static final Size SMALL_SIZE = new Size(WIDTH, HEIGHT);
+
+    /** The mean difference in gray levels (0-255) above which the scene counts as changed */
+    private final double threshold;
+
+    /** The longest time in nanoseconds a scene can go without being treated as changed */
+    private final long refreshInterval;
+
+    /** The frame shrunk to WIDTH x HEIGHT, reused for every frame */
+    private final Mat small;
+
+    /** The shrunk frame in grayscale, reused for every frame */
+    private final Mat gray;
+
+    /** The grayscale frame the last change was detected on */
+    private final Mat reference;
+
+    /** The absolute difference between gray and reference, reused for every frame */
+    private final Mat difference;
+
+    /** The System.nanoTime() when the last change was detected, or 0 if there was none */
+    private long lastChange;
+
+    /**
+     * Constructs a MotionDetector with the given settings.
+     * OpenCV must be loaded before the detector is created.
+     *
+     * @param threshold the mean difference in gray levels above which the scene counts as changed
+     * @param refreshMillis the longest time in milliseconds a scene can go without being treated as changed
+     */
+    public MotionDetector(double threshold, long refreshMillis) {
+        this.threshold = threshold;
+        this.refreshInterval = refreshMillis * 1_000_000;
+
+        small = new Mat();
+        gray = new Mat();
+        reference = new Mat();
+        difference = new Mat();
+    }
+
+    /**
+     * Returns whether the frame differs enough from the frame the last change
+     * was detected on to be worth running the model again. Frames are shrunk
+     * to a tiny grayscale image first, so camera noise averages out and the
+     * check costs a fraction of a millisecond. The scene is also treated as
+     * changed once the refresh interval has passed, so a wrong prediction
+     * never sticks for long.
+     *
+     * @param frame the BGR frame captured from the camera
+     * @return true if the model should run on the frame, false if the last prediction still holds
+     */
+    public boolean hasChanged(Mat frame) {
+        Imgproc.resize(frame, small, SMALL_SIZE, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+
+        long now = System.nanoTime();
+        boolean changed = reference.empty() || now - lastChange >= refreshInterval;
+
+        if (!changed) {
+            Core.absdiff(gray, reference, difference);
+            changed = Core.mean(difference).val[0] > threshold;
+        }
+
+        // Compare later frames against this one, so a slow drift still adds up to a change
+        if (changed) {
+            gray.copyTo(reference);
+            lastChange = now;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Releases the native memory held by the reusable Mats.
+     */
+    public void release() {
+        small.release();
+        gray.release();
+        reference.release();
+        difference.release();
+    }
+}
@@ -0,0 +1,182 @@
+package com.codedotorg.modelmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.opencv.core.Mat;
+
+import com.codedotorg.metrics.PipelineMetrics;
+import com.codedotorg.source.FrameSource;
+
+public class MultiCameraController {
+
+    /** The sources the frames come from, one per stream */
+    private final List<FrameSource> sources;
+
+    /** Predicts the frames of all streams with one model */
+    private final StreamPredictor predictor;
+
+    /** The id given to each stream by the predictor */
+    private final int[] streamIds;
+
+    /** The latest prediction of each stream, replaced as a whole */
+    private final AtomicReferenceArray<Prediction> latestPredictions;
+
+    /** The listeners of each stream */
+    private final List<List<PredictionListener>> listeners;
+
+    /** The capture thread of each stream */
+    private final List<Thread> captureThreads = new ArrayList<>();
+
+    /** Whether the capture threads are running */
+    private volatile boolean running;
+
+    /**
+     * Constructs a MultiCameraController that reads several frame sources at
+     * once and sends their frames to one shared StreamPredictor, such as a
+     * MicroBatcher or an InferencePool. Each stream keeps its own prediction.
+     *
+     * @param sources the frame sources, one per stream
+     * @param predictor predicts the frames of all streams
+     */
+    public MultiCameraController(List<FrameSource> sources, StreamPredictor predictor) {
+        this.sources = sources;
+        this.predictor = predictor;
+
+        streamIds = new int[sources.size()];
+        latestPredictions = new AtomicReferenceArray<>(sources.size());
+        listeners = new ArrayList<>();
+
+        for (int stream = 0; stream < sources.size(); stream++) {
+            int index = stream;
+            List<PredictionListener> streamListeners = new CopyOnWriteArrayList<>();
+            listeners.add(streamListeners);
+
+            streamIds[stream] = predictor.addStream(prediction -> {
+                latestPredictions.set(index, prediction);
+                for (PredictionListener listener : streamListeners) {
+                    listener.onPrediction(prediction);
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens every frame source and starts one capture thread per stream.
+     * OpenCV must be loaded first. Sources that cannot be opened are skipped.
+     *
+     * @return the number of streams that were started
+     */
+    public int start() {
+        running = true;
+        int started = 0;
+
+        for (int stream = 0; stream < sources.size(); stream++) {
+            FrameSource source = sources.get(stream);
+
+            if (!source.open()) {
+                System.out.println("Error! " + source + " can't be opened.");
+                continue;
+            }
+
+            int streamId = streamIds[stream];
+            Thread captureThread = new Thread(() -> capture(source, streamId), "camera-capture-" + stream);
+            captureThread.setDaemon(true);
+            captureThread.start();
+
+            captureThreads.add(captureThread);
+            started++;
+        }
+
+        return started;
+    }
+
+    /**
+     * Returns the number of streams.
+     *
+     * @return the number of frame sources
+     */
+    public int getStreamCount() {
+        return sources.size();
+    }
+
+    /**
+     * Returns the latest prediction of a stream.
+     *
+     * @param stream the index of the stream in the list of sources
+     * @return the latest prediction, or null if there is none yet
+     */
+    public Prediction getLatestPrediction(int stream) {
+        return latestPredictions.get(stream);
+    }
+
+    /**
+     * Returns the number of frames of a stream replaced by a newer frame
+     * before they could be predicted.
+     *
+     * @param stream the index of the stream in the list of sources
+     * @return the number of dropped frames of the stream
+     */
+    public long getDroppedFrames(int stream) {
+        return predictor.getDroppedFrames(streamIds[stream]);
+    }
+
+    /**
+     * Registers a listener called each time a prediction is made for a stream.
+     *
+     * @param stream the index of the stream in the list of sources
+     * @param listener the listener to add
+     */
+    public void addPredictionListener(int stream, PredictionListener listener) {
+        listeners.get(stream).add(listener);
+    }
+
+    /**
+     * Stops the capture threads, waits for them to release their sources
+     * and closes the predictor.
+     */
+    public void stop() {
+        running = false;
+
+        for (Thread captureThread : captureThreads) {
+            try {
+                captureThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        predictor.close();
+    }
+
+    /**
+     * Reads frames from a source and submits them to the predictor until
+     * stopped or the source ends.
+     *
+     * @param source the source to read
+     * @param streamId the id of the stream given by the predictor
+     */
+    private void capture(FrameSource source, int streamId) {
+        Mat frame = new Mat();
+        PipelineMetrics metrics = PipelineMetrics.get();
+
+        while (running) {
+            long start = System.nanoTime();
+
+            if (!source.read(frame)) {
+                System.out.println("Cannot capture the frame from " + source + ".");
+                break;
+            }
+
+            metrics.capture().recordSince(start);
+            metrics.frameCaptured();
+
+            predictor.submit(streamId, frame);
+        }
+
+        source.close();
+        frame.release();
+    }
+}
@@ -0,0 +1,32 @@
+package com.codedotorg.modelmanager;
+
+import java.util.Locale;
+
+public enum OverflowPolicy {
+
+    /** The oldest waiting frame is failed to make room, so the newest frames are always predicted */
+    DROP_OLDEST,
+
+    /** The new frame is failed right away, so callers can shed load */
+    REJECT,
+
+    /** The caller waits until there is room, so a slow model holds back the caller */
+    BLOCK;
+
+    /**
+     * Returns the policy with the given name, such as "drop-oldest", "reject" or "block".
+     * Prints an error and uses the default if the name is unknown.
+     *
+     * @param name the name of the policy, in any case and with - or _
+     * @param defaultPolicy the policy to use if the name is unknown
+     * @return the policy with the given name
+     */
+    public static OverflowPolicy parse(String name, OverflowPolicy defaultPolicy) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown overflow policy: " + name);
+            return defaultPolicy;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.codedotorg.modelmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+public class PipelineConfig {
+
+    /** The prefix of the system properties that override the config file */
+    private static final String PREFIX = "rps.";
+
+    /** The config file read at startup, set with -Drps.config */
+    private static final String CONFIG_PATH = System.getProperty(PREFIX + "config", "rps.properties");
+
+    /** The settings read from the config file */
+    private static final Properties FILE_SETTINGS = loadFile();
+
+    /**
+     * PipelineConfig only has static methods.
+     */
+    private PipelineConfig() {
+    }
+
+    /**
+     * Returns the value of a setting. A system property named "rps." + key
+     * takes precedence over the key in the config file.
+     *
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value of the setting
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            value = FILE_SETTINGS.getProperty(key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Returns the value of an integer setting.
+     * Prints an error and uses the default if the value is not a number.
+     *
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value of the setting
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a decimal setting.
+     * Prints an error and uses the default if the value is not a number.
+     *
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value of the setting
+     */
+    public static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a true/false setting.
+     *
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value of the setting
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Reads the config file if it exists.
+     *
+     * @return the settings in the config file, empty if there is no file
+     */
+    private static Properties loadFile() {
+        Properties settings = new Properties();
+        Path path = Paths.get(CONFIG_PATH);
+
+        if (Files.isRegularFile(path)) {
+            try (InputStream input = Files.newInputStream(path)) {
+                settings.load(input);
+                System.out.println("Settings loaded from " + path.toAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("Failed to load the settings");
+                e.printStackTrace();
+            }
+        }
+
+        return settings;
+    }
+}
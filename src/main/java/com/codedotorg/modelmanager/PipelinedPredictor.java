@@ -0,0 +1,230 @@
+package com.codedotorg.modelmanager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.opencv.core.Mat;
+
+import com.codedotorg.metrics.PipelineMetrics;
+
+public class PipelinedPredictor {
+
+    /** Runs the model on the prepared frames */
+    private final ModelPredictor predictor;
+
+    /** The prediction cache of the model, or null if it is disabled */
+    private final PredictionCache cache;
+
+    /** Called on the inference thread with each prediction, in the order the frames were submitted */
+    private final PredictionListener listener;
+
+    /** All preprocessors, so they can be released when the pipeline is closed */
+    private final FramePreprocessor[] preprocessors;
+
+    /** The preprocessors whose buffer is not in use, submit() waits here when all are busy */
+    private final BlockingQueue<FramePreprocessor> freeBuffers;
+
+    /** The prepared frames waiting for the model, oldest first */
+    private final BlockingQueue<PreparedFrame> preparedFrames;
+
+    /** The thread running the model */
+    private final Thread inferenceThread;
+
+    /** The last prediction made, only used on the inference thread */
+    private Prediction lastPrediction;
+
+    /**
+     * Constructs a PipelinedPredictor that prepares frames on the thread
+     * calling submit() while the model runs on the previous frame on its own
+     * thread. Each frame is prepared into one of depth input buffers, so
+     * preparing frame N+1 never overwrites the buffer the model is reading
+     * for frame N.
+     *
+     * @param model the loaded model
+     * @param depth the number of input buffers, 2 for double buffering
+     * @param listener called on the inference thread with each prediction
+     */
+    public PipelinedPredictor(ModelManager model, int depth, PredictionListener listener) {
+        this.predictor = model.getModelPredictor();
+        this.cache = model.getCache();
+        this.listener = listener;
+
+        long[] inputShape = model.getModelProcessor().getSignature().getInputShape();
+        preprocessors = new FramePreprocessor[depth];
+        freeBuffers = new ArrayBlockingQueue<>(depth);
+        preparedFrames = new ArrayBlockingQueue<>(depth);
+
+        for (int i = 0; i < depth; i++) {
+            preprocessors[i] = new FramePreprocessor(inputShape);
+            freeBuffers.add(preprocessors[i]);
+        }
+
+        inferenceThread = new Thread(this::runInference, "pipeline-inference");
+        inferenceThread.setDaemon(true);
+        inferenceThread.start();
+    }
+
+    /**
+     * Prepares a frame for the model on the calling thread and queues it for
+     * the inference thread. Waits while every input buffer is in use, so a
+     * slow model holds back the caller instead of piling up frames.
+     * Frames found in the prediction cache skip the model but still keep their place in line.
+     *
+     * @param frame the BGR frame, which can be reused as soon as this returns
+     * @param sequence the sequence number of the frame
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws RuntimeException if the frame cannot be prepared, in which case its buffer is freed again
+     */
+    public void submit(Mat frame, long sequence) throws InterruptedException {
+        long hash = 0;
+
+        if (cache != null) {
+            hash = cache.hash(frame);
+            float[] probabilities = cache.get(hash);
+
+            if (probabilities != null) {
+                PipelineMetrics.get().cacheHit();
+                preparedFrames.put(new PreparedFrame(null, probabilities, hash, sequence));
+                return;
+            }
+        }
+
+        FramePreprocessor preprocessor = freeBuffers.take();
+        try {
+            predictor.prepare(frame, preprocessor, sequence);
+        } catch (RuntimeException e) {
+            // Hand the buffer back, or a few bad frames would leave submit() waiting forever
+            freeBuffers.put(preprocessor);
+            throw e;
+        }
+        preparedFrames.put(new PreparedFrame(preprocessor, null, hash, sequence));
+    }
+
+    /**
+     * Queues a frame that shows the same thing as the previous one, so the
+     * previous prediction is published again for it once the frames before
+     * it have been predicted.
+     *
+     * @param sequence the sequence number of the frame
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void submitRepeat(long sequence) throws InterruptedException {
+        preparedFrames.put(new PreparedFrame(null, null, 0, sequence));
+    }
+
+    /**
+     * Stops the inference thread and releases the input buffers.
+     * Frames still queued are dropped. submit() must not be called afterwards.
+     */
+    public void close() {
+        inferenceThread.interrupt();
+
+        try {
+            inferenceThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (FramePreprocessor preprocessor : preprocessors) {
+            preprocessor.release();
+        }
+    }
+
+    /**
+     * Runs the model on each prepared frame in the order they were submitted,
+     * hands the input buffer back for the next frame and publishes the prediction.
+     * A frame that fails is logged and skipped, so one bad frame or listener
+     * never stops the predictions or leaves submit() waiting forever.
+     */
+    private void runInference() {
+        try {
+            while (true) {
+                PreparedFrame prepared = preparedFrames.take();
+
+                try {
+                    Prediction prediction = predict(prepared);
+
+                    if (prediction != null) {
+                        lastPrediction = prediction;
+                        listener.onPrediction(prediction);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to predict a frame");
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The pipeline was closed
+        }
+    }
+
+    /**
+     * Returns the prediction for a prepared frame, running the model unless
+     * the frame was found in the cache or repeats the previous one.
+     *
+     * @param prepared the frame taken from the queue
+     * @return the prediction for the frame, or null if there is nothing to repeat yet
+     * @throws InterruptedException if the thread is interrupted while handing back the buffer
+     */
+    private Prediction predict(PreparedFrame prepared) throws InterruptedException {
+        if (prepared.preprocessor != null) {
+            long start = System.nanoTime();
+            float[] probabilities;
+
+            try {
+                probabilities = predictor.predictPrepared(prepared.preprocessor.getBuffer(1), prepared.sequence);
+            } finally {
+                // The model is done with the buffer, so the next frame can be prepared into it
+                freeBuffers.put(prepared.preprocessor);
+            }
+
+            if (cache != null) {
+                PipelineMetrics.get().cacheMiss(System.nanoTime() - start);
+                cache.put(prepared.hash, probabilities);
+            }
+            return predictor.toPrediction(probabilities, prepared.sequence);
+        }
+        else if (prepared.probabilities != null) {
+            // The frame was found in the prediction cache
+            return predictor.toPrediction(prepared.probabilities, prepared.sequence);
+        }
+        else if (lastPrediction != null) {
+            // Nothing to run, the frame shows the same thing as the previous one
+            return lastPrediction.withSequence(prepared.sequence);
+        }
+        return null;
+    }
+
+    /**
+     * A frame waiting for the model.
+     */
+    private static class PreparedFrame {
+
+        /** The preprocessor holding the prepared frame, or null if the model does not need to run */
+        private final FramePreprocessor preprocessor;
+
+        /** The probabilities found in the prediction cache, or null if there are none */
+        private final float[] probabilities;
+
+        /** The perceptual hash of the frame, used to cache the prediction */
+        private final long hash;
+
+        /** The sequence number of the frame */
+        private final long sequence;
+
+        /**
+         * Constructs a PreparedFrame.
+         *
+         * @param preprocessor the preprocessor holding the prepared frame, or null if the model does not need to run
+         * @param probabilities the probabilities found in the prediction cache, or null to repeat the previous prediction
+         * @param hash the perceptual hash of the frame
+         * @param sequence the sequence number of the frame
+         */
+        private PreparedFrame(FramePreprocessor preprocessor, float[] probabilities, long hash, long sequence) {
+            this.preprocessor = preprocessor;
+            this.probabilities = probabilities;
+            this.hash = hash;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.codedotorg.modelmanager;
+
+import java.nio.ByteBuffer;
+
+public interface PixelNormalizer {
+
+    /**
+     * Converts unsigned 8-bit pixels to floats normalized to [-1,1] and
+     * writes them into the given buffer as native-order floats.
+     *
+     * @param pixels the pixels to normalize
+     * @param length the number of pixels to normalize
+     * @param output the buffer to write the floats to, starting at index 0
+     */
+    void normalize(byte[] pixels, int length, ByteBuffer output);
+
+    /**
+     * Returns the fastest PixelNormalizer available in this JVM.
+     * The SIMD implementation is used when the jdk.incubator.vector module
+     * is present (run with --add-modules jdk.incubator.vector) and has not
+     * been disabled with vector=false. Otherwise the scalar loop is used.
+     *
+     * @return the PixelNormalizer to use
+     */
+    static PixelNormalizer getInstance() {
+        boolean vectorEnabled = PipelineConfig.getBoolean("vector", true);
+        boolean vectorPresent = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+        if (vectorEnabled && vectorPresent) {
+            try {
+                // Loaded by name so this interface never links against the incubator module
+                return (PixelNormalizer) Class.forName("com.codedotorg.modelmanager.VectorPixelNormalizer")
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector API unavailable, using scalar normalization");
+            }
+        }
+
+        return new ScalarPixelNormalizer();
+    }
+}
@@ -5,9 +5,21 @@ public class Prediction {
     /** The name of the predicted class */
     private final String className;
 
+    /** The index of the predicted class in the labels, or -1 if unknown */
+    private final int classIndex;
+
     /** The confidence score of the prediction */
     private final float confidence;
 
+    /** The sequence number of the frame the prediction was made for, or -1 if unknown */
+    private final long sequence;
+
+    /** The System.nanoTime() when the prediction was made */
+    private final long timestamp;
+
+    /** The probability of every class, or null if only the predicted class is known */
+    private final float[] probabilities;
+
     /**
      * Constructs a Prediction object with the given class name and confidence value.
      * 
@@ -15,8 +27,39 @@ public class Prediction {
      * @param confidence the confidence value of the prediction
      */
     public Prediction(String className, float confidence) {
+        this(className, -1, confidence, -1);
+    }
+
+    /**
+     * Constructs a Prediction object for a numbered frame, timestamped now.
+     *
+     * @param className the name of the predicted class
+     * @param classIndex the index of the predicted class in the labels
+     * @param confidence the confidence value of the prediction
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     */
+    public Prediction(String className, int classIndex, float confidence, long sequence) {
+        this(className, classIndex, confidence, sequence, null);
+    }
+
+    /**
+     * Constructs a Prediction object for a numbered frame that keeps the
+     * probability of every class, timestamped now. The array is kept as is
+     * and must not be modified afterwards.
+     *
+     * @param className the name of the predicted class
+     * @param classIndex the index of the predicted class in the labels
+     * @param confidence the confidence value of the prediction
+     * @param sequence the sequence number of the frame, or -1 if it is not numbered
+     * @param probabilities the probability of every class, or null if unknown
+     */
+    public Prediction(String className, int classIndex, float confidence, long sequence, float[] probabilities) {
+        this.probabilities = probabilities;
         this.className = className;
+        this.classIndex = classIndex;
         this.confidence = confidence;
+        this.sequence = sequence;
+        this.timestamp = System.nanoTime();
     }
 
     /**
@@ -28,6 +71,15 @@ public class Prediction {
         return className;
     }
 
+    /**
+     * Returns the index of the class in the model's labels.
+     *
+     * @return the index of the class, or -1 if unknown
+     */
+    public int getClassIndex() {
+        return classIndex;
+    }
+
     /**
      * Returns the confidence level of the prediction.
      * 
@@ -37,12 +89,61 @@ public class Prediction {
         return confidence;
     }
 
+    /**
+     * Returns the number of classes whose probability is known.
+     *
+     * @return the number of classes, or 0 if only the predicted class is known
+     */
+    public int getNumClasses() {
+        return probabilities == null ? 0 : probabilities.length;
+    }
+
+    /**
+     * Returns the probability the model gave to a class.
+     *
+     * @param classIndex the index of the class in the labels
+     * @return the probability of the class
+     */
+    public float getProbability(int classIndex) {
+        return probabilities[classIndex];
+    }
+
+    /**
+     * Returns the sequence number of the frame the prediction was made for.
+     *
+     * @return the frame sequence number, or -1 if unknown
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the prediction was made.
+     *
+     * @return the System.nanoTime() when the prediction was made
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns a copy of this prediction for another frame, timestamped now.
+     * Used when a frame is known to show the same thing as the frame this
+     * prediction was made for.
+     *
+     * @param newSequence the sequence number of the other frame
+     * @return a Prediction with the same class and probabilities for the other frame
+     */
+    public Prediction withSequence(long newSequence) {
+        return new Prediction(className, classIndex, confidence, newSequence, probabilities);
+    }
+
     /**
      * Returns a string representation of the Prediction object.
      * 
      * @return a string containing the class name and confidence of the prediction
      */
     public String toString() {
-        return "Prediction Result: className=" + className + ", confidence: " + confidence;
+        return "Prediction Result: className=" + className + ", confidence: " + confidence + ", frame: " + sequence;
     }
 }
@@ -0,0 +1,118 @@
+package com.codedotorg.modelmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+public class PredictionCache {
+
+    /** The size frames are shrunk to before hashing, one column wider than the 8x8 hash */
+    private static final Size HASH_SIZE = new Size(9, 8);
+
+    /** The largest number of differing bits for two hashes to count as the same frame */
+    private final int tolerance;
+
+    /** The probabilities of recent frames by their hash, least recently used first */
+    private final LinkedHashMap<Long, float[]> entries;
+
+    /** The frame shrunk for hashing, reused for every frame */
+    private Mat small;
+
+    /** The shrunk frame in grayscale, reused for every frame */
+    private Mat gray;
+
+    /** The pixels of the grayscale frame, reused for every frame */
+    private final byte[] pixels = new byte[9 * 8];
+
+    /**
+     * Constructs a PredictionCache that keeps the probabilities of the given
+     * number of recent frames and evicts the least recently used one when full.
+     *
+     * @param capacity the largest number of frames to remember
+     * @param tolerance the largest number of differing hash bits for two frames to count as the same
+     */
+    public PredictionCache(int capacity, int tolerance) {
+        this.tolerance = tolerance;
+        this.entries = new LinkedHashMap<Long, float[]>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Computes the difference hash (dHash) of a frame. The frame is shrunk to
+     * 9x8 grayscale and each bit tells whether a pixel is brighter than its
+     * right neighbour, so the hash follows the shape of the scene and barely
+     * changes with camera noise or small changes in lighting.
+     *
+     * @param frame the BGR frame captured from the camera
+     * @return the 64-bit hash of the frame
+     */
+    public synchronized long hash(Mat frame) {
+        // The Mats are created on first use so the cache can be built before OpenCV is loaded
+        if (small == null) {
+            small = new Mat();
+            gray = new Mat();
+        }
+
+        Imgproc.resize(frame, small, HASH_SIZE, 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(small, gray, Imgproc.COLOR_BGR2GRAY);
+        gray.get(0, 0, pixels);
+
+        long hash = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int left = pixels[row * 9 + col] & 0xFF;
+                int right = pixels[row * 9 + col + 1] & 0xFF;
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the probabilities of a remembered frame whose hash differs
+     * from the given one by at most the tolerance, marking it as recently used.
+     *
+     * @param hash the hash of the frame to look up
+     * @return the probabilities of the matching frame, or null if there is none
+     */
+    public synchronized float[] get(long hash) {
+        float[] probabilities = entries.get(hash);
+
+        if (probabilities == null && tolerance > 0) {
+            // Look for the closest frame within the tolerance
+            long closest = 0;
+            int closestDistance = tolerance + 1;
+
+            for (long key : entries.keySet()) {
+                int distance = Long.bitCount(key ^ hash);
+                if (distance < closestDistance) {
+                    closest = key;
+                    closestDistance = distance;
+                }
+            }
+
+            if (closestDistance <= tolerance) {
+                probabilities = entries.get(closest);
+            }
+        }
+
+        return probabilities;
+    }
+
+    /**
+     * Remembers the probabilities the model predicted for a frame.
+     *
+     * @param hash the hash of the frame
+     * @param probabilities the predicted probabilities, which must not be modified afterwards
+     */
+    public synchronized void put(long hash, float[] probabilities) {
+        entries.put(hash, probabilities);
+    }
+}
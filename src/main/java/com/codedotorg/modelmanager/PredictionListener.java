@@ -0,0 +1,12 @@
+package com.codedotorg.modelmanager;
+
+@FunctionalInterface
+public interface PredictionListener {
+
+    /**
+     * Called each time the model finishes a prediction.
+     *
+     * @param prediction the new prediction
+     */
+    void onPrediction(Prediction prediction);
+}
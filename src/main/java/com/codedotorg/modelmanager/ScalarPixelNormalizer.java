@@ -0,0 +1,28 @@
+package com.codedotorg.modelmanager;
+
+import java.nio.ByteBuffer;
+
+public class ScalarPixelNormalizer implements PixelNormalizer {
+
+    /**
+     * Normalizes the pixels one at a time.
+     *
+     * @param pixels the pixels to normalize
+     * @param length the number of pixels to normalize
+     * @param output the buffer to write the floats to, starting at index 0
+     */
+    public void normalize(byte[] pixels, int length, ByteBuffer output) {
+        for (int i = 0; i < length; i++) {
+            output.putFloat(i * Float.BYTES, ((pixels[i] & 0xFF) - 127.5f) / 127.5f); // normalization to [-1,1]
+        }
+    }
+
+    /**
+     * Returns a string naming this implementation.
+     *
+     * @return the name of the implementation
+     */
+    public String toString() {
+        return "scalar";
+    }
+}
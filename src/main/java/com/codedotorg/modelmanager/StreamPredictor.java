@@ -0,0 +1,41 @@
+package com.codedotorg.modelmanager;
+
+import org.opencv.core.Mat;
+
+public interface StreamPredictor {
+
+    /**
+     * Adds a stream of frames, for example one camera. Its predictions are
+     * passed to the listener one at a time and in frame order.
+     *
+     * @param listener called with each prediction made for the stream
+     * @return the id of the stream, used with submit()
+     */
+    int addStream(PredictionListener listener);
+
+    /**
+     * Hands a frame of a stream over to be predicted. The frame is copied,
+     * so the caller can reuse it right away. A newer frame replaces one of
+     * the same stream that is still waiting.
+     *
+     * @param streamId the id returned by addStream()
+     * @param frame the BGR frame
+     * @return the sequence number given to the frame within its stream
+     */
+    long submit(int streamId, Mat frame);
+
+    /**
+     * Returns the number of frames of a stream that were replaced by a newer
+     * frame before they could be predicted.
+     *
+     * @param streamId the id returned by addStream()
+     * @return the number of dropped frames of the stream
+     */
+    long getDroppedFrames(int streamId);
+
+    /**
+     * Stops predicting and releases the resources held.
+     * submit() must not be called afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,67 @@
+package com.codedotorg.modelmanager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorPixelNormalizer implements PixelNormalizer {
+
+    /** The widest float vector supported by the CPU */
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    /** Int vectors with as many lanes as FLOATS */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /** Byte vectors of the same bit size, each holding FLOATS.length() lanes per part */
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    /** The number of int-sized parts each byte vector is split into */
+    private static final int PARTS = BYTES.length() / INTS.length();
+
+    /**
+     * Normalizes a full byte vector of pixels per iteration. Each part is
+     * widened to ints, masked to unsigned, converted to floats and then
+     * shifted and divided exactly like the scalar loop, so the results are
+     * bit-identical. The remaining tail is normalized one pixel at a time.
+     *
+     * @param pixels the pixels to normalize
+     * @param length the number of pixels to normalize
+     * @param output the buffer to write the floats to, starting at index 0
+     */
+    public void normalize(byte[] pixels, int length, ByteBuffer output) {
+        ByteOrder order = output.order();
+        int bound = BYTES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, pixels, i);
+
+            for (int part = 0; part < PARTS; part++) {
+                IntVector ints = ((IntVector) bytes.convertShape(VectorOperators.B2I, INTS, part)).and(0xFF);
+                FloatVector floats = ((FloatVector) ints.convert(VectorOperators.I2F, 0))
+                        .sub(127.5f)
+                        .div(127.5f);
+
+                floats.intoByteBuffer(output, (i + part * INTS.length()) * Float.BYTES, order);
+            }
+        }
+
+        for (; i < length; i++) {
+            output.putFloat(i * Float.BYTES, ((pixels[i] & 0xFF) - 127.5f) / 127.5f); // normalization to [-1,1]
+        }
+    }
+
+    /**
+     * Returns a string naming this implementation and its vector width.
+     *
+     * @return the name of the implementation
+     */
+    public String toString() {
+        return "vector (" + FLOATS + ")";
+    }
+}
@@ -0,0 +1,66 @@
+package com.codedotorg.source;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+public class CameraSource implements FrameSource {
+
+    /** The index of the camera device */
+    private final int device;
+
+    /** Paces the frames when a target frame rate is set */
+    private final FramePacer pacer;
+
+    /** The opened camera */
+    private VideoCapture camera;
+
+    /**
+     * Constructs a CameraSource for the given camera device.
+     *
+     * @param device the index of the camera, 0 for the system default camera
+     * @param fps the target frame rate, or 0 to read frames as fast as the camera delivers them
+     */
+    public CameraSource(int device, double fps) {
+        this.device = device;
+        this.pacer = new FramePacer(fps);
+    }
+
+    /**
+     * Opens the camera device.
+     *
+     * @return true if the camera was opened, false otherwise
+     */
+    public boolean open() {
+        camera = new VideoCapture(device);
+        return camera.isOpened();
+    }
+
+    /**
+     * Reads the next frame from the camera.
+     *
+     * @param frame the Mat to copy the BGR frame into
+     * @return true if a frame was read, false otherwise
+     */
+    public boolean read(Mat frame) {
+        pacer.await();
+        return camera != null && camera.read(frame);
+    }
+
+    /**
+     * Releases the camera.
+     */
+    public void close() {
+        if (camera != null) {
+            camera.release();
+        }
+    }
+
+    /**
+     * Returns a description of the source.
+     *
+     * @return the camera device
+     */
+    public String toString() {
+        return "camera " + device;
+    }
+}
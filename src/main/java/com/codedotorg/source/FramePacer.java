@@ -0,0 +1,44 @@
+package com.codedotorg.source;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class FramePacer {
+
+    /** The time between two frames in nanoseconds, 0 if frames are not paced */
+    private final long interval;
+
+    /** The System.nanoTime() when the next frame is due */
+    private long nextFrame;
+
+    /**
+     * Constructs a FramePacer for the given frame rate.
+     *
+     * @param fps the target frame rate, or 0 to not wait at all
+     */
+    public FramePacer(double fps) {
+        interval = fps > 0 ? (long) (1_000_000_000L / fps) : 0;
+    }
+
+    /**
+     * Waits until the next frame is due. If the caller has fallen behind,
+     * the schedule restarts from now instead of catching up with a burst
+     * of frames.
+     */
+    public void await() {
+        if (interval == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (nextFrame == 0 || now - nextFrame > interval) {
+            nextFrame = now;
+        }
+
+        while (now < nextFrame) {
+            LockSupport.parkNanos(nextFrame - now);
+            now = System.nanoTime();
+        }
+
+        nextFrame += interval;
+    }
+}
@@ -0,0 +1,121 @@
+package com.codedotorg.source;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+
+import com.codedotorg.modelmanager.PipelineConfig;
+
+public interface FrameSource {
+
+    /**
+     * Opens the source. OpenCV must be loaded first.
+     *
+     * @return true if frames can be read, false otherwise
+     */
+    boolean open();
+
+    /**
+     * Reads the next frame into the given Mat, waiting if the source has
+     * a target frame rate and the next frame is not due yet.
+     *
+     * @param frame the Mat to copy the BGR frame into
+     * @return true if a frame was read, false if the source has ended or failed
+     */
+    boolean read(Mat frame);
+
+    /**
+     * Releases the resources held by the source.
+     */
+    void close();
+
+    /**
+     * Creates the frame source set with the source setting, which is one of
+     * "camera:&lt;device&gt;", "video:&lt;file&gt;", "images:&lt;directory&gt;" or
+     * "synthetic:&lt;width&gt;x&lt;height&gt;". The frame rate is set with source.fps,
+     * where 0 reads frames as fast as possible, and source.loop restarts
+     * video files and image directories when they end.
+     *
+     * @return the configured frame source, the default camera if none is set
+     */
+    static FrameSource fromConfig() {
+        return fromSpec(PipelineConfig.getString("source", "camera:0"),
+                PipelineConfig.getDouble("source.fps", 0),
+                PipelineConfig.getBoolean("source.loop", true));
+    }
+
+    /**
+     * Creates the frame sources set with the sources setting, a comma
+     * separated list such as "camera:0,camera:1,video:clip.mp4". Falls back
+     * to the single source setting when sources is not set. Every source
+     * shares the source.fps and source.loop settings.
+     *
+     * @return the configured frame sources
+     */
+    static List<FrameSource> allFromConfig() {
+        String specs = PipelineConfig.getString("sources", null);
+        if (specs == null) {
+            return List.of(fromConfig());
+        }
+
+        return allFromSpecs(specs);
+    }
+
+    /**
+     * Creates a frame source for each description in a comma separated list.
+     *
+     * @param specs the descriptions of the sources, separated by commas
+     * @return the frame sources, in the order they are listed
+     */
+    static List<FrameSource> allFromSpecs(String specs) {
+        double fps = PipelineConfig.getDouble("source.fps", 0);
+        boolean loop = PipelineConfig.getBoolean("source.loop", true);
+
+        List<FrameSource> sources = new ArrayList<>();
+        for (String spec : specs.split(",")) {
+            if (!spec.isBlank()) {
+                sources.add(fromSpec(spec.trim(), fps, loop));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Creates a frame source from a description such as "video:clip.mp4".
+     * Prints an error and falls back to the default camera if the
+     * description is not understood.
+     *
+     * @param spec the kind of source and its argument, separated by a colon
+     * @param fps the target frame rate, or 0 to read frames as fast as possible
+     * @param loop whether to restart video files and image directories when they end
+     * @return the frame source
+     */
+    static FrameSource fromSpec(String spec, double fps, boolean loop) {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        String argument = colon < 0 ? "" : spec.substring(colon + 1);
+
+        try {
+            switch (kind) {
+                case "camera":
+                    return new CameraSource(argument.isEmpty() ? 0 : Integer.parseInt(argument), fps);
+                case "video":
+                    return new VideoFileSource(argument, fps, loop);
+                case "images":
+                    return new ImageDirectorySource(Paths.get(argument), fps, loop);
+                case "synthetic":
+                    String[] size = (argument.isEmpty() ? "640x480" : argument).split("x");
+                    return new SyntheticSource(Integer.parseInt(size[0]), Integer.parseInt(size[1]), fps);
+                default:
+                    break;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // Reported below
+        }
+
+        System.err.println("Invalid frame source: " + spec + ", using the default camera");
+        return new CameraSource(0, fps);
+    }
+}
@@ -0,0 +1,127 @@
+package com.codedotorg.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+public class ImageDirectorySource implements FrameSource {
+
+    /** The directory holding the images */
+    private final Path directory;
+
+    /** Paces the frames when a target frame rate is set */
+    private final FramePacer pacer;
+
+    /** Whether to start over with the first image after the last one */
+    private final boolean loop;
+
+    /** The images in the directory, sorted by name */
+    private List<Path> images;
+
+    /** The index of the next image to read */
+    private int next;
+
+    /**
+     * Constructs an ImageDirectorySource that plays the images in the given
+     * directory in name order, like the frames of a video.
+     *
+     * @param directory the directory holding the images
+     * @param fps the target frame rate, or 0 to decode images as fast as possible
+     * @param loop whether to start over with the first image after the last one
+     */
+    public ImageDirectorySource(Path directory, double fps, boolean loop) {
+        this.directory = directory;
+        this.pacer = new FramePacer(fps);
+        this.loop = loop;
+    }
+
+    /**
+     * Lists the images in the directory.
+     *
+     * @return true if the directory holds at least one image, false otherwise
+     */
+    public boolean open() {
+        try (Stream<Path> files = Files.list(directory)) {
+            images = files.filter(ImageDirectorySource::isImage).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            System.err.println("Failed to list the images in " + directory);
+            e.printStackTrace();
+            return false;
+        }
+
+        next = 0;
+        return !images.isEmpty();
+    }
+
+    /**
+     * Decodes the next image, starting over after the last one if looping.
+     * Images that cannot be decoded are skipped.
+     *
+     * @param frame the Mat to copy the BGR image into
+     * @return true if an image was read, false if there are no more images
+     */
+    public boolean read(Mat frame) {
+        pacer.await();
+
+        if (images == null || images.isEmpty()) {
+            return false;
+        }
+
+        for (int attempts = 0; attempts < images.size(); attempts++) {
+            if (next == images.size()) {
+                if (!loop) {
+                    return false;
+                }
+                next = 0;
+            }
+
+            Path image = images.get(next++);
+            Mat decoded = Imgcodecs.imread(image.toString());
+
+            if (!decoded.empty()) {
+                decoded.copyTo(frame);
+                decoded.release();
+                return true;
+            }
+
+            System.err.println("Cannot decode " + image);
+            decoded.release();
+        }
+
+        return false;
+    }
+
+    /**
+     * Forgets the listed images.
+     */
+    public void close() {
+        images = null;
+    }
+
+    /**
+     * Returns a description of the source.
+     *
+     * @return the image directory
+     */
+    public String toString() {
+        return "images " + directory;
+    }
+
+    /**
+     * Returns whether the given file is an image OpenCV can decode.
+     *
+     * @param file the file to check
+     * @return true if the file has an image extension, false otherwise
+     */
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".bmp");
+    }
+}
@@ -0,0 +1,89 @@
+package com.codedotorg.source;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+public class SyntheticSource implements FrameSource {
+
+    /** The background color of the generated frames */
+    private static final Scalar BACKGROUND = new Scalar(90, 120, 150);
+
+    /** The color of the moving shape */
+    private static final Scalar SHAPE = new Scalar(200, 180, 160);
+
+    /** The width of the generated frames */
+    private final int width;
+
+    /** The height of the generated frames */
+    private final int height;
+
+    /** Paces the frames when a target frame rate is set */
+    private final FramePacer pacer;
+
+    /** The number of frames generated so far */
+    private long frameCount;
+
+    /**
+     * Constructs a SyntheticSource that generates frames of the given size
+     * showing a shape moving across a plain background, so the pipeline can
+     * run without any camera or media files.
+     *
+     * @param width the width of the generated frames
+     * @param height the height of the generated frames
+     * @param fps the target frame rate, or 0 to generate frames as fast as possible
+     */
+    public SyntheticSource(int width, int height, double fps) {
+        this.width = width;
+        this.height = height;
+        this.pacer = new FramePacer(fps);
+    }
+
+    /**
+     * Nothing has to be opened for generated frames.
+     *
+     * @return always true
+     */
+    public boolean open() {
+        frameCount = 0;
+        return true;
+    }
+
+    /**
+     * Draws the next frame into the given Mat, reusing its memory.
+     *
+     * @param frame the Mat to draw the BGR frame into
+     * @return always true
+     */
+    public boolean read(Mat frame) {
+        pacer.await();
+
+        frame.create(height, width, CvType.CV_8UC3);
+        frame.setTo(BACKGROUND);
+
+        // Move the shape one step to the right every frame, wrapping around at the edge
+        int radius = Math.max(1, Math.min(width, height) / 4);
+        double x = radius + (frameCount * 8) % Math.max(1, width - 2 * radius);
+        Imgproc.circle(frame, new Point(x, height / 2.0), radius, SHAPE, -1);
+
+        frameCount++;
+        return true;
+    }
+
+    /**
+     * Nothing has to be released for generated frames.
+     */
+    public void close() {
+    }
+
+    /**
+     * Returns a description of the source.
+     *
+     * @return the size of the generated frames
+     */
+    public String toString() {
+        return "synthetic " + width + "x" + height;
+    }
+}
@@ -0,0 +1,87 @@
+package com.codedotorg.source;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class VideoFileSource implements FrameSource {
+
+    /** The path of the video file */
+    private final String path;
+
+    /** Paces the frames when a target frame rate is set */
+    private final FramePacer pacer;
+
+    /** Whether to restart the video when it ends */
+    private final boolean loop;
+
+    /** The opened video file */
+    private VideoCapture video;
+
+    /**
+     * Constructs a VideoFileSource for the given video file.
+     *
+     * @param path the path of the video file
+     * @param fps the target frame rate, or 0 to decode frames as fast as possible
+     * @param loop whether to restart the video when it ends
+     */
+    public VideoFileSource(String path, double fps, boolean loop) {
+        this.path = path;
+        this.pacer = new FramePacer(fps);
+        this.loop = loop;
+    }
+
+    /**
+     * Opens the video file.
+     *
+     * @return true if the file was opened, false otherwise
+     */
+    public boolean open() {
+        video = new VideoCapture(path);
+        return video.isOpened();
+    }
+
+    /**
+     * Decodes the next frame of the video, starting over at the end if looping.
+     *
+     * @param frame the Mat to copy the BGR frame into
+     * @return true if a frame was read, false if the video has ended or failed
+     */
+    public boolean read(Mat frame) {
+        pacer.await();
+
+        if (video == null) {
+            return false;
+        }
+
+        if (video.read(frame)) {
+            return true;
+        }
+
+        if (!loop) {
+            return false;
+        }
+
+        // Rewind to the first frame and try once more
+        video.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+        return video.read(frame);
+    }
+
+    /**
+     * Releases the video file.
+     */
+    public void close() {
+        if (video != null) {
+            video.release();
+        }
+    }
+
+    /**
+     * Returns a description of the source.
+     *
+     * @return the path of the video file
+     */
+    public String toString() {
+        return "video " + path;
+    }
+}
@@ -0,0 +1,219 @@
+package com.codedotorg.modelmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DecisionEngineTest {
+
+    /** The labels of a Teachable Machine rock paper scissors model */
+    private static final List<String> LABELS = List.of("0 rock", "1 paper", "2 scissors", "3 neutral");
+
+    /** The index of the neutral class in LABELS */
+    private static final int NEUTRAL = 3;
+
+    /** The share of replayed frames whose most likely class is wrong */
+    private static final double GLITCH_RATE = 0.2;
+
+    /**
+     * A gesture held steadily is decided on the configured stable frame, not before.
+     */
+    @Test
+    void decidesAfterStableFrames() {
+        DecisionEngine engine = movingAverage();
+
+        assertNull(engine.offer(frame(0, 0.95f, 0)));
+        assertNull(engine.offer(frame(0, 0.95f, 1)));
+        Prediction decision = engine.offer(frame(0, 0.95f, 2));
+
+        assertNotNull(decision);
+        assertEquals("0 rock", decision.getClassName());
+        assertEquals(2, decision.getSequence());
+    }
+
+    /**
+     * One confident misclassified frame between neutral frames never decides a round.
+     */
+    @Test
+    void ignoresSingleGlitch() {
+        DecisionEngine engine = movingAverage();
+
+        for (int i = 0; i < 20; i++) {
+            int shown = i == 10 ? 1 : NEUTRAL;
+            assertNull(engine.offer(frame(shown, 0.99f, i)), "Decided on frame " + i);
+        }
+    }
+
+    /**
+     * The vote counts each frame's most likely class. Frames that lean only
+     * slightly towards rock never reach the threshold when probabilities are
+     * averaged, but every one of them votes for rock.
+     */
+    @Test
+    void voteCountsMostLikelyClass() {
+        DecisionEngine average = movingAverage();
+        DecisionEngine vote = new DecisionEngine(LABELS, prediction -> { }, true, 3, 0.5f, 0.8f, 3);
+        Prediction decision = null;
+
+        for (int i = 0; i < 3; i++) {
+            Prediction leaning = new Prediction("0 rock", 0, 0.51f, i, new float[] {0.51f, 0.49f, 0, 0});
+            assertNull(average.offer(leaning));
+            decision = vote.offer(leaning);
+        }
+
+        assertNotNull(decision);
+        assertEquals(0, decision.getClassIndex());
+    }
+
+    /**
+     * Replays a long synthetic session for the moving average.
+     */
+    @Test
+    void movingAverageReplay() {
+        assertReplay(movingAverage());
+    }
+
+    /**
+     * Replays a long synthetic session for the majority vote.
+     */
+    @Test
+    void majorityVoteReplay() {
+        assertReplay(new DecisionEngine(LABELS, prediction -> { }, true, 5, 0.5f, 0.8f, 3));
+    }
+
+    /**
+     * Replays a seeded sequence of held gestures separated by neutral gaps,
+     * where one frame in five shows a confident wrong class, and checks
+     * the decisions against the gesture actually shown: at most 1% of the
+     * decisions are wrong, at least 95% of the gestures are decided, and a
+     * gesture is decided within 7 frames on average and 20 at most.
+     * Gaps between glitches shorter than the stable frames are what make a
+     * held gesture go undecided.
+     *
+     * @param engine the engine to replay the frames through
+     */
+    private static void assertReplay(DecisionEngine engine) {
+        Random random = new Random(2024);
+        List<Integer> shown = new ArrayList<>();
+        List<Integer> segmentStarts = new ArrayList<>();
+
+        // Alternate held gestures and neutral gaps of 15 to 30 frames
+        for (int segment = 0; segment < 200; segment++) {
+            int gesture = segment % 2 == 0 ? random.nextInt(3) : NEUTRAL;
+            if (gesture != NEUTRAL) {
+                segmentStarts.add(shown.size());
+            }
+            for (int i = 15 + random.nextInt(16); i > 0; i--) {
+                shown.add(gesture);
+            }
+        }
+
+        int[] firstDecision = new int[shown.size()];
+        int decisions = 0;
+        int wrongDecisions = 0;
+        int wrongFrames = 0;
+        int segmentStart = 0;
+
+        for (int i = 0; i < shown.size(); i++) {
+            int truth = shown.get(i);
+            if (i > 0 && truth != shown.get(i - 1)) {
+                segmentStart = i;
+                engine.reset();
+            }
+
+            Prediction prediction = noisyFrame(truth, i, random);
+            if (prediction.getClassIndex() != truth) {
+                wrongFrames++;
+            }
+
+            Prediction decision = engine.offer(prediction);
+            if (decision != null) {
+                decisions++;
+                if (decision.getClassIndex() != truth) {
+                    wrongDecisions++;
+                }
+                else if (firstDecision[segmentStart] == 0) {
+                    firstDecision[segmentStart] = i - segmentStart + 1;
+                }
+            }
+        }
+
+        double frameErrorRate = (double) wrongFrames / shown.size();
+        double decisionErrorRate = (double) wrongDecisions / decisions;
+
+        int misses = 0;
+        int totalLatency = 0;
+        int maxLatency = 0;
+        for (int start : segmentStarts) {
+            if (firstDecision[start] == 0) {
+                misses++;
+                continue;
+            }
+            totalLatency += firstDecision[start];
+            maxLatency = Math.max(maxLatency, firstDecision[start]);
+        }
+        double meanLatency = (double) totalLatency / (segmentStarts.size() - misses);
+        double missRate = (double) misses / segmentStarts.size();
+
+        assertTrue(frameErrorRate > 0.15, "The replay should have about 20% wrong frames, had " + frameErrorRate);
+        assertTrue(decisionErrorRate <= 0.01, "Decision error rate " + decisionErrorRate + " over " + decisions + " decisions");
+        assertTrue(missRate <= 0.05, misses + " of " + segmentStarts.size() + " gestures were never decided");
+        assertTrue(meanLatency <= 7, "Mean decision latency " + meanLatency + " frames");
+        assertTrue(maxLatency <= 20, "Max decision latency " + maxLatency + " frames");
+    }
+
+    /**
+     * Returns a DecisionEngine with the default moving average settings.
+     *
+     * @return the engine under test
+     */
+    private static DecisionEngine movingAverage() {
+        return new DecisionEngine(LABELS, prediction -> { }, false, 5, 0.5f, 0.8f, 3);
+    }
+
+    /**
+     * Returns a prediction where the given class has the given confidence
+     * and the rest is spread evenly over the other classes.
+     *
+     * @param classIndex the most likely class
+     * @param confidence the probability of the most likely class
+     * @param sequence the sequence number of the frame
+     * @return the prediction for the frame
+     */
+    private static Prediction frame(int classIndex, float confidence, long sequence) {
+        float[] probabilities = new float[LABELS.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] = i == classIndex ? confidence : (1 - confidence) / (probabilities.length - 1);
+        }
+        return new Prediction(LABELS.get(classIndex), classIndex, confidence, sequence, probabilities);
+    }
+
+    /**
+     * Returns the prediction for a frame showing the given class. Usually the
+     * class is found with a confidence between 0.85 and 0.99, but one frame in
+     * five is a glitch that shows another class with a confidence between 0.6 and 0.95.
+     *
+     * @param truth the class actually shown
+     * @param sequence the sequence number of the frame
+     * @param random the source of the noise
+     * @return the prediction for the frame
+     */
+    private static Prediction noisyFrame(int truth, long sequence, Random random) {
+        int classIndex = truth;
+        float confidence = 0.85f + 0.14f * random.nextFloat();
+
+        if (random.nextDouble() < GLITCH_RATE) {
+            classIndex = (truth + 1 + random.nextInt(LABELS.size() - 1)) % LABELS.size();
+            confidence = 0.6f + 0.35f * random.nextFloat();
+        }
+
+        return frame(classIndex, confidence, sequence);
+    }
+}
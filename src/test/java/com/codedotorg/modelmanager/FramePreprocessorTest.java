@@ -0,0 +1,161 @@
+package com.codedotorg.modelmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+class FramePreprocessorTest {
+
+    /** The number of frames prepared before measuring, so JIT compilation is not counted */
+    private static final int WARMUP_FRAMES = 200;
+
+    /** The number of frames measured */
+    private static final int MEASURED_FRAMES = 1000;
+
+    /** The most heap bytes a prepared frame may allocate on average */
+    private static final long MAX_BYTES_PER_FRAME = 16;
+
+    /**
+     * The most the OpenCV and Java normalizations may differ per value, 2 ulp
+     * of 1.0. They round pixel / 127.5 - 1 differently by up to 1 ulp.
+     */
+    private static final float MAX_NORMALIZE_DIFFERENCE = 2 * Math.ulp(1f);
+
+    /** The synthetic camera frame */
+    private Mat frame;
+
+    /** The preprocessor under test, sized for a 224x224 RGB model */
+    private FramePreprocessor preprocessor;
+
+    /**
+     * Loads OpenCV once for all tests.
+     */
+    @BeforeAll
+    static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    /**
+     * Creates a 640x480 frame of random pixels and the preprocessor.
+     */
+    @BeforeEach
+    void setUp() {
+        frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+        preprocessor = new FramePreprocessor(new long[] {-1, 224, 224, 3});
+    }
+
+    /**
+     * Releases the native memory of the frame and the preprocessor.
+     */
+    @AfterEach
+    void tearDown() {
+        frame.release();
+        preprocessor.release();
+    }
+
+    /**
+     * Preparing a frame reuses its buffers, so once warmed up it should not
+     * allocate on the heap. Measured with the allocated bytes of the thread.
+     */
+    @Test
+    void prepareDoesNotAllocateAfterWarmUp() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            preprocessor.prepare(frame);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            preprocessor.prepare(frame);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated / MEASURED_FRAMES <= MAX_BYTES_PER_FRAME,
+                "prepare() allocated " + allocated + " bytes over " + MEASURED_FRAMES + " frames");
+    }
+
+    /**
+     * A blue BGR frame becomes RGB pixels of (-1, -1, 1), which checks the
+     * channel order and the mapping of [0,255] to [-1,1] together.
+     */
+    @Test
+    void prepareConvertsToNormalizedRgb() {
+        frame.setTo(new Scalar(255, 0, 0));
+
+        FloatBuffer input = preprocessor.prepare(frame);
+
+        assertEquals(224 * 224 * 3, input.remaining());
+        for (int i = 0; i < input.remaining(); i += 3) {
+            assertEquals(-1f, input.get(i), 1e-6f);
+            assertEquals(-1f, input.get(i + 1), 1e-6f);
+            assertEquals(1f, input.get(i + 2), 1e-6f);
+        }
+    }
+
+    /**
+     * Each frame of a batch goes to its own slot of the input buffer.
+     */
+    @Test
+    void prepareWritesEachBatchSlot() {
+        FramePreprocessor batch = new FramePreprocessor(new long[] {-1, 224, 224, 3}, 2);
+        Mat black = new Mat(480, 640, CvType.CV_8UC3, new Scalar(0, 0, 0));
+        Mat white = new Mat(480, 640, CvType.CV_8UC3, new Scalar(255, 255, 255));
+
+        try {
+            batch.prepare(black, 0);
+            batch.prepare(white, 1);
+            FloatBuffer input = batch.getBuffer(2);
+
+            assertEquals(2 * batch.getFrameSize(), input.remaining());
+            assertEquals(-1f, input.get(0), 1e-6f);
+            assertEquals(1f, input.get(batch.getFrameSize()), 1e-6f);
+        } finally {
+            black.release();
+            white.release();
+            batch.release();
+        }
+    }
+
+    /**
+     * OpenCV normalizes by default and the Java PixelNormalizer with
+     * preprocess=java, so both must give the model the same input for a
+     * random frame, within the rounding tolerance.
+     */
+    @Test
+    void nativeAndJavaNormalizationAgree() {
+        FramePreprocessor nativePreprocessor = new FramePreprocessor(new long[] {-1, 224, 224, 3}, 1, true);
+        FramePreprocessor javaPreprocessor = new FramePreprocessor(new long[] {-1, 224, 224, 3}, 1, false);
+
+        try {
+            FloatBuffer nativeInput = nativePreprocessor.prepare(frame);
+            FloatBuffer javaInput = javaPreprocessor.prepare(frame);
+
+            assertEquals(nativeInput.remaining(), javaInput.remaining());
+
+            float maxDifference = 0;
+            for (int i = 0; i < nativeInput.remaining(); i++) {
+                maxDifference = Math.max(maxDifference, Math.abs(nativeInput.get(i) - javaInput.get(i)));
+            }
+
+            assertTrue(maxDifference <= MAX_NORMALIZE_DIFFERENCE,
+                    "The normalizations differ by up to " + maxDifference);
+        } finally {
+            nativePreprocessor.release();
+            javaPreprocessor.release();
+        }
+    }
+}
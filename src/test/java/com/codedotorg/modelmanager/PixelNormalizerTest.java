@@ -0,0 +1,99 @@
+package com.codedotorg.modelmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PixelNormalizerTest {
+
+    /** The reference implementation */
+    private final PixelNormalizer scalar = new ScalarPixelNormalizer();
+
+    /** The SIMD implementation, which must give exactly the same floats */
+    private final PixelNormalizer vector = new VectorPixelNormalizer();
+
+    /**
+     * The tests run with the vector module, so the SIMD normalizer should be picked.
+     */
+    @Test
+    void getInstanceUsesVectorApiWhenPresent() {
+        assertTrue(PixelNormalizer.getInstance() instanceof VectorPixelNormalizer);
+    }
+
+    /**
+     * Every byte value normalizes to the same bits in both implementations.
+     */
+    @Test
+    void everyByteValueIsBitExact() {
+        byte[] pixels = new byte[256];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) i;
+        }
+
+        assertBitExact(pixels, pixels.length, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * A full model input of random pixels is bit-exact in both byte orders.
+     */
+    @Test
+    void modelInputIsBitExactInBothByteOrders() {
+        byte[] pixels = randomPixels(224 * 224 * 3, 42);
+
+        assertBitExact(pixels, pixels.length, ByteOrder.LITTLE_ENDIAN);
+        assertBitExact(pixels, pixels.length, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Lengths that do not fill the last vector are finished by the scalar tail,
+     * and pixels past the length are left alone.
+     */
+    @Test
+    void tailLengthsAreBitExact() {
+        byte[] pixels = randomPixels(200, 7);
+
+        for (int length = 0; length <= 130; length++) {
+            assertBitExact(pixels, length, ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Normalizes the first length pixels with both implementations and
+     * compares the raw bits of every float written.
+     *
+     * @param pixels the pixels to normalize
+     * @param length the number of pixels to normalize
+     * @param order the byte order of the output buffer
+     */
+    private void assertBitExact(byte[] pixels, int length, ByteOrder order) {
+        ByteBuffer expected = ByteBuffer.allocateDirect(pixels.length * Float.BYTES).order(order);
+        ByteBuffer actual = ByteBuffer.allocateDirect(pixels.length * Float.BYTES).order(order);
+
+        scalar.normalize(pixels, length, expected);
+        vector.normalize(pixels, length, actual);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int expectedBits = Float.floatToRawIntBits(expected.getFloat(i * Float.BYTES));
+            int actualBits = Float.floatToRawIntBits(actual.getFloat(i * Float.BYTES));
+            assertEquals(expectedBits, actualBits, "Pixel " + i + " of " + length + " (" + (pixels[i] & 0xFF) + ", " + order + ")");
+        }
+    }
+
+    /**
+     * Returns reproducible random pixels.
+     *
+     * @param length the number of pixels
+     * @param seed the seed of the random generator
+     * @return the random pixels
+     */
+    private static byte[] randomPixels(int length, long seed) {
+        byte[] pixels = new byte[length];
+        new Random(seed).nextBytes(pixels);
+        return pixels;
+    }
+}
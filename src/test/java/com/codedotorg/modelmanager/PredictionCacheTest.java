@@ -0,0 +1,220 @@
+package com.codedotorg.modelmanager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+class PredictionCacheTest {
+
+    /** The number of classes of the replayed model */
+    private static final int NUM_CLASSES = 4;
+
+    /** The Mats created by a test, released after it */
+    private final List<Mat> mats = new ArrayList<>();
+
+    /**
+     * Loads OpenCV once for all tests.
+     */
+    @BeforeAll
+    static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    /**
+     * Releases the Mats created by the test.
+     */
+    @AfterEach
+    void tearDown() {
+        for (Mat mat : mats) {
+            mat.release();
+        }
+    }
+
+    /**
+     * The same frame always hashes the same, camera noise flips at most a
+     * couple of bits and another scene is far away.
+     */
+    @Test
+    void hashFollowsTheScene() {
+        PredictionCache cache = new PredictionCache(8, 2);
+        Random random = new Random(1);
+        Mat scene = scene(random);
+        Mat other = scene(random);
+
+        long hash = cache.hash(scene);
+
+        assertEquals(hash, cache.hash(scene));
+        assertTrue(Long.bitCount(hash ^ cache.hash(noisy(scene, random))) <= 2);
+        assertTrue(Long.bitCount(hash ^ cache.hash(other)) > 10);
+    }
+
+    /**
+     * A hash within the tolerance finds the remembered frame, one beyond it does not.
+     */
+    @Test
+    void getMatchesWithinTolerance() {
+        PredictionCache cache = new PredictionCache(8, 2);
+        float[] probabilities = {0.9f, 0.1f};
+        cache.put(0b1111L, probabilities);
+
+        assertSame(probabilities, cache.get(0b1111L));
+        assertSame(probabilities, cache.get(0b1100L));
+        assertNull(cache.get(0b1000L));
+    }
+
+    /**
+     * With no tolerance only the exact hash matches.
+     */
+    @Test
+    void zeroToleranceMatchesExactly() {
+        PredictionCache cache = new PredictionCache(8, 0);
+        cache.put(42L, new float[] {1});
+
+        assertNull(cache.get(43L));
+        assertArrayEquals(new float[] {1}, cache.get(42L));
+    }
+
+    /**
+     * The closest remembered frame wins when several are within the tolerance.
+     */
+    @Test
+    void getPrefersClosestFrame() {
+        PredictionCache cache = new PredictionCache(8, 2);
+        float[] far = {1, 0};
+        float[] near = {0, 1};
+        cache.put(0b0011L, far);
+        cache.put(0b0001L, near);
+
+        assertSame(near, cache.get(0b0000L));
+    }
+
+    /**
+     * A full cache evicts the least recently used frame, and a lookup counts as a use.
+     */
+    @Test
+    void evictsLeastRecentlyUsed() {
+        PredictionCache cache = new PredictionCache(2, 0);
+        cache.put(1L, new float[] {1});
+        cache.put(2L, new float[] {2});
+
+        cache.get(1L);
+        cache.put(3L, new float[] {3});
+
+        assertArrayEquals(new float[] {1}, cache.get(1L));
+        assertNull(cache.get(2L));
+        assertArrayEquals(new float[] {3}, cache.get(3L));
+    }
+
+    /**
+     * Replays 2000 noisy frames of 12 scenes, each showing one class, through
+     * the cache the way ModelManager uses it, with a stand-in model that knows
+     * the class of each scene. Checks that the cached predictions are almost
+     * always those the model would have made, and that most frames hit.
+     */
+    @Test
+    void replayKeepsAccuracy() {
+        PredictionCache cache = new PredictionCache(64, 2);
+        Random random = new Random(7);
+
+        List<Mat> scenes = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            scenes.add(scene(random));
+        }
+
+        int hits = 0;
+        int wrongHits = 0;
+        int frames = 2000;
+
+        for (int i = 0; i < frames; i++) {
+            int sceneIndex = random.nextInt(scenes.size());
+            int truth = sceneIndex % NUM_CLASSES;
+            Mat frame = noisy(scenes.get(sceneIndex), random);
+
+            long hash = cache.hash(frame);
+            float[] probabilities = cache.get(hash);
+
+            if (probabilities != null) {
+                hits++;
+                if (probabilities[truth] != 1) {
+                    wrongHits++;
+                }
+            }
+            else {
+                cache.put(hash, oneHot(truth));
+            }
+            frame.release();
+        }
+
+        double hitRate = (double) hits / frames;
+        double wrongRate = (double) wrongHits / Math.max(1, hits);
+
+        assertTrue(wrongRate <= 0.01, wrongHits + " of " + hits + " cache hits had the wrong class");
+        assertTrue(hitRate >= 0.9, "Hit rate " + hitRate);
+    }
+
+    /**
+     * Returns a 640x480 scene with smooth random shapes, the kind of
+     * structure a shrunk camera frame keeps.
+     *
+     * @param random the source of the scene
+     * @return the BGR scene
+     */
+    private Mat scene(Random random) {
+        Mat small = new Mat(6, 8, CvType.CV_8UC3);
+        byte[] pixels = new byte[6 * 8 * 3];
+        random.nextBytes(pixels);
+        small.put(0, 0, pixels);
+
+        Mat scene = new Mat();
+        Imgproc.resize(small, scene, new Size(640, 480), 0, 0, Imgproc.INTER_CUBIC);
+        small.release();
+        mats.add(scene);
+        return scene;
+    }
+
+    /**
+     * Returns a copy of the scene with camera noise and a small change in brightness.
+     *
+     * @param scene the scene to copy
+     * @param random the source of the noise
+     * @return the noisy frame, released by the caller
+     */
+    private static Mat noisy(Mat scene, Random random) {
+        Mat noise = new Mat(scene.size(), CvType.CV_16SC3);
+        Core.randn(noise, random.nextInt(11) - 5, 8);
+
+        Mat frame = new Mat();
+        Mat noMask = new Mat();
+        Core.add(scene, noise, frame, noMask, CvType.CV_8UC3);
+        noise.release();
+        noMask.release();
+        return frame;
+    }
+
+    /**
+     * Returns the probabilities of a model that is sure of the given class.
+     *
+     * @param classIndex the predicted class
+     * @return the probabilities
+     */
+    private static float[] oneHot(int classIndex) {
+        float[] probabilities = new float[NUM_CLASSES];
+        probabilities[classIndex] = 1;
+        return probabilities;
+    }
+}
@@ -0,0 +1,147 @@
+package com.codedotorg.modelmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Session;
+import org.tensorflow.Shape;
+import org.tensorflow.Tensor;
+
+class TensorSoakTest {
+
+    /** Where Linux reports the memory of the current process */
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    /** The number of frames predicted before measuring, so the allocators reach their steady state */
+    private static final int WARMUP_FRAMES = 1000;
+
+    /** The number of frames predicted while measuring, set with soak.frames */
+    private static final int SOAK_FRAMES = PipelineConfig.getInt("soak.frames", 100_000);
+
+    /** The number of frames between two checks of the resident set, so a leak fails early */
+    private static final int CHECK_INTERVAL = 5000;
+
+    /** The most the resident set may grow during the soak */
+    private static final long MAX_GROWTH_KB = 64 * 1024;
+
+    /**
+     * Runs ModelPredictor.processAndPredict() over many synthetic frames and
+     * checks that the resident set of the process stays flat. The model is a
+     * small graph averaging the 224x224x3 input into three softmax classes,
+     * so the frames go through the real preprocessing, tensor creation and
+     * Session.run. A leaked input tensor keeps a 600 KB native copy of the
+     * input, so a leak exceeds the bound within a few hundred frames.
+     *
+     * @throws IOException if the memory of the process cannot be read
+     */
+    @Test
+    void predictingFramesDoesNotGrowResidentMemory() throws IOException {
+        assumeTrue(Files.isReadable(PROC_STATUS), "Needs /proc/self/status to read the resident set");
+
+        nu.pattern.OpenCV.loadLocally();
+        Mat frame = new Mat(480, 640, CvType.CV_8UC3);
+        Core.randu(frame, 0, 256);
+
+        try (Graph graph = new Graph(); Session session = new Session(graph)) {
+            ModelProcessor processor = new ModelProcessor(session, buildModel(graph), Arrays.asList("a", "b", "c"));
+            ModelPredictor predictor = new ModelPredictor(processor);
+
+            try {
+                predictFrames(predictor, frame, 0, WARMUP_FRAMES);
+                long before = residentKilobytes();
+
+                for (int first = 0; first < SOAK_FRAMES; first += CHECK_INTERVAL) {
+                    predictFrames(predictor, frame, WARMUP_FRAMES + first, Math.min(CHECK_INTERVAL, SOAK_FRAMES - first));
+                    long growth = residentKilobytes() - before;
+
+                    assertTrue(growth < MAX_GROWTH_KB, "Resident memory grew by " + growth + " KB after "
+                            + (first + CHECK_INTERVAL) + " frames");
+                }
+            } finally {
+                processor.getPreprocessor().release();
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Builds a model that averages each channel of the input and applies a
+     * softmax, so it has the input and output shapes of a real classifier.
+     *
+     * @param graph the graph to add the operations to
+     * @return the input and output of the model
+     */
+    private static ModelSignature buildModel(Graph graph) {
+        Output<Float> input = graph.opBuilder("Placeholder", "input_1")
+                .setAttr("dtype", DataType.FLOAT)
+                .setAttr("shape", Shape.make(-1, 224, 224, 3))
+                .build()
+                .output(0);
+
+        try (Tensor<Integer> axes = Tensor.create(new int[] {1, 2}, Integer.class)) {
+            Output<Integer> axesConstant = graph.opBuilder("Const", "axes")
+                    .setAttr("dtype", DataType.INT32)
+                    .setAttr("value", axes)
+                    .build()
+                    .output(0);
+
+            Output<Float> mean = graph.opBuilder("Mean", "mean")
+                    .addInput(input)
+                    .addInput(axesConstant)
+                    .build()
+                    .output(0);
+
+            Output<Float> output = graph.opBuilder("Softmax", "output")
+                    .addInput(mean)
+                    .build()
+                    .output(0);
+
+            return new ModelSignature(input, output);
+        }
+    }
+
+    /**
+     * Predicts the frame the given number of times with increasing sequence numbers.
+     *
+     * @param predictor the predictor to run
+     * @param frame the frame to predict
+     * @param firstSequence the sequence number of the first frame
+     * @param count the number of frames to predict
+     */
+    private static void predictFrames(ModelPredictor predictor, Mat frame, long firstSequence, int count) {
+        for (int i = 0; i < count; i++) {
+            float[] probabilities = predictor.processAndPredict(frame, firstSequence + i);
+            assertEquals(3, probabilities.length);
+        }
+    }
+
+    /**
+     * Returns the resident set size of the process.
+     *
+     * @return the VmRSS of the process in kilobytes
+     * @throws IOException if the memory of the process cannot be read
+     */
+    private static long residentKilobytes() throws IOException {
+        for (String line : Files.readAllLines(PROC_STATUS)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        throw new IOException("No VmRSS in " + PROC_STATUS);
+    }
+}